@@ -0,0 +1,70 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 与 ChatServer.broadcastMessage 相同的扇出：每种格式编码一次，向 N 个内存中的发送队列入队；
+// 随后由“连接”一侧取出并释放，保持队列处于稳定状态
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+  @Param({"10", "100", "1000", "10000"})
+  int recipients;
+
+  // 使用二进制协议的接收者所占百分比
+  @Param({"0", "50"})
+  int binaryPercent;
+
+  private OutboundQueue[] queues;
+  private WireFormat[] formats;
+  private Message message;
+
+  @Setup
+  public void setup() {
+    queues = new OutboundQueue[recipients];
+    formats = new WireFormat[recipients];
+    for (int i = 0; i < recipients; i++) {
+      queues[i] = new OutboundQueue(1024, ServerConfig.OverflowPolicy.DROP_OLDEST,
+                                    skipped -> Frame.encode("skipped"));
+      formats[i] = i * 100 < binaryPercent * recipients ? WireFormat.BINARY
+                                                          : WireFormat.JSON;
+    }
+    message = new Message("message", "sender", "hello everyone, 大家好");
+  }
+
+  @Benchmark
+  public int fanOut() {
+    BroadcastFrames frames = new BroadcastFrames(message);
+    try {
+      for (int i = 0; i < recipients; i++) {
+        queues[i].offer(frames.retain(formats[i]));
+      }
+    } finally {
+      frames.release();
+    }
+    int drained = 0;
+    for (OutboundQueue queue : queues) {
+      Frame frame;
+      while ((frame = queue.poll()) != null) {
+        drained += frame.length();
+        frame.release();
+      }
+    }
+    return drained;
+  }
+}
@@ -0,0 +1,65 @@
+package com.example.chatterdemo.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 多线程同时登录：查用户目录、校验密码、在在线表中占用用户名，再注销。
+// hot=true 时所有线程争抢同一小组用户名，模拟重连风暴中的同名重试
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class LoginBenchmark {
+  @Param({"100000"})
+  int userCount;
+
+  @Param({"false", "true"})
+  boolean hot;
+
+  private final UserDirectory users = new UserDirectory();
+  private final Map<String, Object> clients = new ConcurrentHashMap<>();
+  private String[] usernames;
+
+  @Setup
+  public void setup() {
+    usernames = new String[userCount];
+    for (int i = 0; i < userCount; i++) {
+      usernames[i] = "user" + i;
+      users.put(usernames[i], new UserAccount("password" + i, "nick" + i));
+    }
+  }
+
+  @Benchmark
+  public boolean login() {
+    int bound = hot ? 8 : userCount;
+    int i = ThreadLocalRandom.current().nextInt(bound);
+    String username = usernames[i];
+    UserAccount account = users.lookup(username);
+    if (account == null || !account.passwordMatches("password" + i)) {
+      return false;
+    }
+    Object session = new Object();
+    if (clients.putIfAbsent(username, session) != null) {
+      return false;
+    }
+    clients.remove(username, session);
+    return true;
+  }
+}
@@ -0,0 +1,290 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.MessageJsonCodec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 三种传输模式的对比：同一进程内启动一个真实的 ChatServer，客户端用一个 Selector
+// 驱动全部连接。loginStorm 是 clients 个连接同时注册并登录所需的时间（容量），
+// broadcast 是大厅里一条消息送达其余 clients - 1 个连接、发送者收到确认的延迟。
+// VIRTUAL 需要在 JDK 21 以上运行，旧 JDK 上用 -p transport=BLOCKING,NIO
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class TransportBenchmark {
+  @Param({"BLOCKING", "VIRTUAL", "NIO"})
+  ServerConfig.TransportMode transport;
+
+  @Param({"100", "1000", "5000"})
+  int clients;
+
+  private Path dir;
+  private ChatServer server;
+  private int port;
+  private int storms;
+
+  @Setup(Level.Trial)
+  public void startServer() throws IOException {
+    dir = Files.createTempDirectory("chatter-bench");
+    ServerConfig config = new ServerConfig();
+    config.setPort(0);
+    config.setTransport(transport);
+    config.setDataDir(dir.toString());
+    config.setRateLimitMessagesPerSecond(0);
+    config.setRateLimitBytesPerSecond(0);
+    config.setPingIntervalSeconds(0);
+    config.setRecentHistorySize(0);
+    server = new ChatServer(config);
+    Thread serving = new Thread(server::startServer, "bench-server");
+    serving.setDaemon(true);
+    serving.start();
+    port = server.localPort();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() throws IOException {
+    server.shutdown();
+    try (Stream<Path> files =
+             Files.walk(dir).sorted(Comparator.reverseOrder())) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  // 每次迭代登录一批新用户，迭代结束后断开
+  @State(Scope.Benchmark)
+  public static class Storm {
+    Clients clients;
+
+    @TearDown(Level.Iteration)
+    public void disconnect() throws IOException {
+      if (clients != null) {
+        clients.close();
+        clients = null;
+      }
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  public int loginStorm(Storm storm) throws IOException {
+    storm.clients = new Clients(port, clients, "storm" + storms++ + "-");
+    return storm.clients.loginAll();
+  }
+
+  // 整个试验期间保持 clients 个在线连接
+  @State(Scope.Benchmark)
+  public static class Room {
+    Clients clients;
+
+    @Setup(Level.Trial)
+    public void connect(TransportBenchmark bench) throws IOException {
+      clients = new Clients(bench.port, bench.clients, "room-");
+      clients.loginAll();
+      // 读掉登录期间的上线通知，之后只有被测的广播
+      clients.drain();
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+      clients.close();
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public long broadcast(Room room) throws IOException {
+    return room.clients.broadcast();
+  }
+
+  // 客户端一侧只用 JSON 行；登录阶段逐行解码，之后只数换行
+  static final class Clients {
+    private final Selector selector = Selector.open();
+    private final SocketChannel[] channels;
+    private final ByteArrayOutputStream[] partial;
+    private final String prefix;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final ByteBuffer message;
+
+    Clients(int port, int count, String prefix) throws IOException {
+      this.prefix = prefix;
+      channels = new SocketChannel[count];
+      partial = new ByteArrayOutputStream[count];
+      for (int i = 0; i < count; i++) {
+        SocketChannel channel =
+            SocketChannel.open(new InetSocketAddress("localhost", port));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, i);
+        channels[i] = channel;
+        partial[i] = new ByteArrayOutputStream();
+      }
+      message = encode(new Message("message", prefix + 0, "hello everyone"));
+    }
+
+    // 注册和登录请求一次写出，返回登录成功的连接数
+    int loginAll() throws IOException {
+      for (int i = 0; i < channels.length; i++) {
+        String username = prefix + i;
+        writeFully(channels[i], encode(Message.createRegisterRequest(
+                                    username, "password", username)));
+        writeFully(channels[i],
+                   encode(Message.createLoginRequest(username, "password")));
+      }
+      boolean[] done = new boolean[channels.length];
+      int pending = channels.length;
+      int success = 0;
+      while (pending > 0) {
+        selector.select();
+        for (SelectionKey key : selector.selectedKeys()) {
+          int i = (Integer) key.attachment();
+          if (done[i]) {
+            read(key);
+            continue;
+          }
+          for (String line : readLines(key, i)) {
+            Message reply = MessageJsonCodec.decode(line);
+            if ("login".equals(reply.getType())) {
+              done[i] = true;
+              pending--;
+              if ("success".equals(reply.getStatus())) {
+                success++;
+              }
+              break;
+            }
+          }
+        }
+        selector.selectedKeys().clear();
+      }
+      return success;
+    }
+
+    // 读到 200 ms 内没有新数据为止
+    void drain() throws IOException {
+      while (selector.select(200) > 0) {
+        for (SelectionKey key : selector.selectedKeys()) {
+          read(key);
+        }
+        selector.selectedKeys().clear();
+      }
+    }
+
+    // 其余连接各收到一条广播，发送者收到一条确认
+    long broadcast() throws IOException {
+      writeFully(channels[0], message.duplicate());
+      long expected = channels.length;
+      long received = 0;
+      while (received < expected) {
+        selector.select();
+        for (SelectionKey key : selector.selectedKeys()) {
+          received += read(key);
+        }
+        selector.selectedKeys().clear();
+      }
+      return received;
+    }
+
+    // 返回读到的换行数
+    private int read(SelectionKey key) throws IOException {
+      int lines = 0;
+      SocketChannel channel = (SocketChannel) key.channel();
+      while (true) {
+        buffer.clear();
+        int n = channel.read(buffer);
+        if (n < 0) {
+          key.cancel();
+          throw new IOException("Server closed the connection");
+        }
+        if (n == 0) {
+          return lines;
+        }
+        for (int j = 0; j < n; j++) {
+          if (buffer.get(j) == '\n') {
+            lines++;
+          }
+        }
+      }
+    }
+
+    private String[] readLines(SelectionKey key, int i) throws IOException {
+      SocketChannel channel = (SocketChannel) key.channel();
+      ByteArrayOutputStream line = partial[i];
+      StringBuilder complete = new StringBuilder();
+      while (true) {
+        buffer.clear();
+        int n = channel.read(buffer);
+        if (n < 0) {
+          key.cancel();
+          throw new IOException("Server closed the connection");
+        }
+        if (n == 0) {
+          break;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          byte b = buffer.get();
+          if (b == '\n') {
+            complete.append(line.toString(StandardCharsets.UTF_8)).append('\n');
+            line.reset();
+          } else {
+            line.write(b);
+          }
+        }
+      }
+      return complete.length() == 0 ? new String[0]
+                                    : complete.toString().split("\n");
+    }
+
+    private static ByteBuffer encode(Message message) {
+      return ByteBuffer.wrap((MessageJsonCodec.encode(message) + "\n")
+                                 .getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 请求很小，发送缓冲区满的情况只在服务端停止读取时出现
+    private static void writeFully(SocketChannel channel, ByteBuffer data)
+        throws IOException {
+      while (data.hasRemaining()) {
+        if (channel.write(data) == 0) {
+          Thread.onSpinWait();
+        }
+      }
+    }
+
+    void close() throws IOException {
+      for (SocketChannel channel : channels) {
+        channel.close();
+      }
+      selector.close();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.example.chatterdemo.server;
+
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import javax.management.ObjectName;
+
+// 每个用户占用的堆内存：分别用原来的 Map<String, JsonObject> 和 UserDirectory
+// 装入同样的用户，比较前后两次堆直方图（jcmd GC.class_histogram，会先做一次 full GC）
+// 的总字节数。不是 JMH 基准，直接运行：
+// java -cp benchmarks/target/benchmarks.jar \
+//     com.example.chatterdemo.server.UserFootprint [用户数]
+public class UserFootprint {
+  public static void main(String[] args) throws Exception {
+    int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    System.out.printf("%d users%n", userCount);
+    measure("Map<String, JsonObject>", userCount, UserFootprint::jsonUsers);
+    measure("UserDirectory", userCount, UserFootprint::directory);
+  }
+
+  private static Map<String, JsonObject> jsonUsers(int userCount) {
+    Map<String, JsonObject> users = new ConcurrentHashMap<>();
+    for (int i = 0; i < userCount; i++) {
+      JsonObject user = new JsonObject();
+      user.addProperty("password", "password" + i);
+      user.addProperty("nickname", "nick" + i);
+      users.put("user" + i, user);
+    }
+    return users;
+  }
+
+  private static UserDirectory directory(int userCount) {
+    UserDirectory users = new UserDirectory();
+    for (int i = 0; i < userCount; i++) {
+      users.put("user" + i, new UserAccount("password" + i, "nick" + i));
+    }
+    return users;
+  }
+
+  // 用户名、密码和昵称字符串两边相同，也计入结果
+  private static void measure(String name, int userCount,
+                              IntFunction<Object> build) throws Exception {
+    long before = liveHeapBytes();
+    Object users = build.apply(userCount);
+    long after = liveHeapBytes();
+    Reference.reachabilityFence(users);
+    System.out.printf("%-24s %8.1f bytes/user%n", name,
+                      (double) (after - before) / userCount);
+  }
+
+  // 直方图最后一行是 "Total <实例数> <字节数>"
+  private static long liveHeapBytes() throws Exception {
+    String histogram = (String) ManagementFactory.getPlatformMBeanServer()
+        .invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                "gcClassHistogram", new Object[] {new String[0]},
+                new String[] {String[].class.getName()});
+    String[] lines = histogram.strip().split("\n");
+    String[] total = lines[lines.length - 1].trim().split("\\s+");
+    return Long.parseLong(total[2]);
+  }
+}
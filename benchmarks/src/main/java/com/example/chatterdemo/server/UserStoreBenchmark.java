@@ -0,0 +1,86 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 用户数据持久化：整份快照的写入与加载，以及一次注册（追加一条日志并 fsync）。
+// 文件写在临时目录中，结束后删除
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class UserStoreBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  int userCount;
+
+  private Path dir;
+  private UserDirectory users;
+  private UserStore store;
+  private int registered;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("chatter-bench");
+    users = new UserDirectory();
+    for (int i = 0; i < userCount; i++) {
+      users.put("user" + i, new UserAccount("password" + i, "nick" + i));
+    }
+    store = new UserStore(dir.resolve("users.json"), users, Integer.MAX_VALUE);
+    store.writeSnapshot();
+    store.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    store.close();
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  @Benchmark
+  public void save() throws IOException {
+    store.writeSnapshot();
+  }
+
+  // 加载到一个新的目录，不影响其它基准使用的数据
+  @Benchmark
+  public int load() throws IOException {
+    UserDirectory loaded = new UserDirectory();
+    new UserStore(dir.resolve("users.json"), loaded, Integer.MAX_VALUE).load();
+    return loaded.size();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Warmup(iterations = 2, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public void register() {
+    String username = "new" + registered++;
+    UserAccount account = new UserAccount("password", username);
+    users.insert(username, account);
+    store.append(username, account).join();
+  }
+}
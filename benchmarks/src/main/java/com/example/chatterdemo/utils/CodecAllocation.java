@@ -0,0 +1,64 @@
+package com.example.chatterdemo.utils;
+
+import com.example.chatterdemo.model.Message;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+// 每解码一条消息分配的堆字节数：Gson 树（先建 JsonObject 再绑定）、流式 JSON、二进制帧，
+// 消息与 CodecBenchmark 相同。用 com.sun.management.ThreadMXBean 读取当前线程的累计分配量，
+// 先预热让 JIT 完成逃逸分析，再取多次调用的平均值。不是 JMH 基准，直接运行：
+// java -cp benchmarks/target/benchmarks.jar \
+//     com.example.chatterdemo.utils.CodecAllocation [每种调用次数]
+// JDK 17.0.9 上的结果（bytes/op）。流式 JSON 省掉了中间的 JsonObject 树，短消息约减半；
+// 长消息主要是 String 本身及 JsonReader 的缓冲区，两种 JSON 差别不大：
+//   text   gson-tree  streaming  binary
+//     16        6472       3000     256
+//    256        7192       3720    1632
+//   4096       48104      44632   23712
+public class CodecAllocation {
+  private static final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) {
+    int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    System.out.printf("%6s %11s %10s %7s%n", "text", "gson-tree", "streaming",
+                      "binary");
+    for (int textLength : new int[] {16, 256, 4096}) {
+      StringBuilder text = new StringBuilder(textLength);
+      for (int i = 0; i < textLength; i++) {
+        text.append(i % 8 == 7 ? '你' : (char) ('a' + i % 26));
+      }
+      Message message = new Message("message", "nickname", text.toString());
+      String json = MessageJsonCodec.encode(message);
+      byte[] frame = BinaryCodec.encodeFrame(message);
+      int bodyOffset = 0;
+      while ((frame[bodyOffset++] & 0x80) != 0) {
+      }
+      int offset = bodyOffset;
+      System.out.printf(
+          "%6d %11d %10d %7d%n", textLength,
+          bytesPerCall(calls, () -> JsonUtils.fromJsonObject(
+                                  JsonUtils.toJsonObject(json), Message.class)),
+          bytesPerCall(calls, () -> MessageJsonCodec.decode(json)),
+          bytesPerCall(calls, () -> BinaryCodec.decode(
+                                  frame, offset, frame.length - offset)));
+    }
+  }
+
+  private static long bytesPerCall(int calls, Supplier<Message> decode) {
+    Object sink = null;
+    for (int i = 0; i < calls / 5; i++) {
+      sink = decode.get();
+    }
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < calls; i++) {
+      sink = decode.get();
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    if (sink == null) {
+      throw new AssertionError();
+    }
+    return allocated / calls;
+  }
+}
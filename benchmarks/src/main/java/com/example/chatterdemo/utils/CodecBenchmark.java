@@ -0,0 +1,97 @@
+package com.example.chatterdemo.utils;
+
+import com.example.chatterdemo.model.Message;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 单条聊天消息的编解码：Gson 树（JsonUtils，旧的服务端/客户端路径）、流式 JSON、二进制帧。
+// 同一组消息按 JSON 行和二进制帧编码后的字节数在 setup 时打印
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+  @Param({"16", "256", "4096"})
+  int textLength;
+
+  private Message message;
+  private String json;
+  private byte[] frame;
+  private int bodyOffset;
+
+  @Setup
+  public void setup() {
+    StringBuilder text = new StringBuilder(textLength);
+    for (int i = 0; i < textLength; i++) {
+      text.append(i % 8 == 7 ? '你' : (char) ('a' + i % 26));
+    }
+    message = new Message("message", "nickname", text.toString());
+    json = MessageJsonCodec.encode(message);
+    frame = BinaryCodec.encodeFrame(message);
+    while ((frame[bodyOffset++] & 0x80) != 0) {
+    }
+    Message notice = new Message("system", null, "nickname joined the chat");
+    Message login = Message.createResponse("login", "success",
+                                           "Login successful");
+    login.setNickname("nickname");
+    printSizes("chat/" + textLength, message);
+    printSizes("login-request", Message.createLoginRequest("username",
+                                                           "password"));
+    printSizes("login-response", login);
+    printSizes("system-notice", notice);
+  }
+
+  // JSON 行含结尾的换行符，二进制帧含长度前缀
+  private static void printSizes(String name, Message message) {
+    int jsonBytes = (MessageJsonCodec.encode(message) + "\n")
+                        .getBytes(StandardCharsets.UTF_8).length;
+    int binaryBytes = BinaryCodec.encodeFrame(message).length;
+    System.out.printf("%n%s: json %d bytes, binary %d bytes (%.1f%% saved)%n",
+                      name, jsonBytes, binaryBytes,
+                      100.0 * (jsonBytes - binaryBytes) / jsonBytes);
+  }
+
+  @Benchmark
+  public String gsonEncode() {
+    return JsonUtils.toJson(message);
+  }
+
+  @Benchmark
+  public Message gsonDecode() {
+    return JsonUtils.fromJsonObject(JsonUtils.toJsonObject(json),
+                                    Message.class);
+  }
+
+  @Benchmark
+  public String streamingEncode() {
+    return MessageJsonCodec.encode(message);
+  }
+
+  @Benchmark
+  public Message streamingDecode() {
+    return MessageJsonCodec.decode(json);
+  }
+
+  @Benchmark
+  public byte[] binaryEncode() {
+    return BinaryCodec.encodeFrame(message);
+  }
+
+  @Benchmark
+  public Message binaryDecode() {
+    return BinaryCodec.decode(frame, bodyOffset, frame.length - bodyOffset);
+  }
+}
@@ -0,0 +1,93 @@
+package com.example.chatterdemo.utils;
+
+import com.example.chatterdemo.model.Message;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 大消息的压缩代价与收益：每种正文的帧大小变化在 setup 时打印，耗时即每帧多花的 CPU。
+// 广播时压缩帧只编码一次，由所有协商了压缩的接收者共享，这部分开销不随接收者数增长
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+  // log：重复结构的日志行；code：源代码；random：随机 Base64，几乎不可压缩
+  @Param({"log", "code", "random"})
+  String content;
+
+  @Param({"1024", "16384", "262144"})
+  int textLength;
+
+  private Message message;
+  private byte[] compressed;
+  private int bodyOffset;
+
+  @Setup
+  public void setup() {
+    message = new Message("message", "nickname", text(content, textLength));
+    byte[] plain = BinaryCodec.encodeFrame(message);
+    compressed = BinaryCodec.encodeFrame(message, true);
+    while ((compressed[bodyOffset++] & 0x80) != 0) {
+    }
+    System.out.printf("%n%s/%d: %d -> %d bytes (%.1f%% saved)%n", content,
+                      textLength, plain.length, compressed.length,
+                      100.0 * (plain.length - compressed.length) / plain.length);
+  }
+
+  private static String text(String content, int length) {
+    StringBuilder text = new StringBuilder(length + 128);
+    Random random = new Random(42);
+    for (int i = 0; text.length() < length; i++) {
+      switch (content) {
+      case "log":
+        text.append(String.format(
+            "2024-05-01 12:%02d:%02d.%03d INFO  [worker-%d] Processed request"
+                + " id=%d status=200 took=%dms%n",
+            i / 60 % 60, i % 60, random.nextInt(1000), random.nextInt(8),
+            100000 + i, random.nextInt(500)));
+        break;
+      case "code":
+        text.append("  private void handle").append(i)
+            .append("(Message message) {\n    if (message == null) {\n")
+            .append("      return;\n    }\n    sendMessage(message.getText()")
+            .append(" + \"").append(i).append("\");\n  }\n\n");
+        break;
+      default:
+        byte[] bytes = new byte[48];
+        random.nextBytes(bytes);
+        text.append(Base64.getEncoder().encodeToString(bytes));
+      }
+    }
+    return text.substring(0, length);
+  }
+
+  @Benchmark
+  public byte[] plainEncode() {
+    return BinaryCodec.encodeFrame(message);
+  }
+
+  @Benchmark
+  public byte[] compressedEncode() {
+    return BinaryCodec.encodeFrame(message, true);
+  }
+
+  @Benchmark
+  public Message compressedDecode() {
+    return BinaryCodec.decode(compressed, bodyOffset,
+                              compressed.length - bodyOffset);
+  }
+}
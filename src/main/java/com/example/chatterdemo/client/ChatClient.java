@@ -1,44 +1,77 @@
 package com.example.chatterdemo.client;
 
 import com.example.chatterdemo.model.Message;
-import com.example.chatterdemo.utils.JsonUtils;
+import com.example.chatterdemo.utils.BinaryCodec;
+import com.example.chatterdemo.utils.HotPathLog;
+import com.example.chatterdemo.utils.MessageJsonCodec;
+import com.google.gson.JsonParseException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
-import javafx.application.Platform;
 
 public class ChatClient {
+  private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
   private Socket socket;
-  private PrintWriter out;
-  private BufferedReader in;
-  private Consumer<Message> messageListener;
+  private InputStream in;
+  private OutputStream out;
+  private boolean binary; // 握手成功后双向使用二进制帧
+  private boolean compressed; // 协商了压缩时较大的消息逐帧压缩
+  private final MessageHandoff handoff = new MessageHandoff();
+  // 收到的消息按帧成批交给监听器，每帧条数可用 -Dchatter.uiMaxMessagesPerPulse 调整
+  private final UiDispatcher dispatcher = new UiDispatcher(
+      Integer.getInteger("chatter.uiMaxMessagesPerPulse", 200),
+      handoff::deliver);
 
-  public ChatClient() {}
+  public ChatClient() { dispatcher.registerMBean(); }
 
   public void connectToServer(String host, int port) {
     try {
       socket = new Socket(host, port);
-      out = new PrintWriter(socket.getOutputStream(), true);
-      in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      in = new BufferedInputStream(socket.getInputStream());
+      out = new BufferedOutputStream(socket.getOutputStream());
+      if (!"json".equalsIgnoreCase(System.getProperty("chatter.protocol"))) {
+        negotiateBinary();
+      }
 
       Thread thread = new Thread(() -> {
         try {
-          String inputLine;
-          while ((inputLine = in.readLine()) != null) {
-            System.out.println("Received message: " +
-                               inputLine); // 添加接收日志
-            Message message = JsonUtils.fromJsonObject(
-                JsonUtils.toJsonObject(inputLine), Message.class);
-            Platform.runLater(() -> {
-              if (messageListener != null) {
-                messageListener.accept(message);
-              } else {
-                System.out.println("No message listener set!");
+          if (binary) {
+            Message message;
+            while ((message = BinaryCodec.readFrame(in)) != null) {
+              String type = message.getType();
+              HotPathLog.print(System.out,
+                               () -> "Received message: " + type); // 添加接收日志
+              dispatch(message);
+            }
+          } else {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+            String inputLine;
+            while ((inputLine = reader.readLine()) != null) {
+              String line = inputLine;
+              HotPathLog.print(System.out,
+                               () -> "Received message: " + line); // 添加接收日志
+              // 空行、null 和格式错误的行只跳过这一行，不能让读线程退出
+              Message message;
+              try {
+                message = MessageJsonCodec.decode(inputLine);
+              } catch (JsonParseException e) {
+                System.err.println("Skipping malformed message: " + line);
+                continue;
+              }
+              if (message != null && message.getType() != null) {
+                dispatch(message);
               }
-            });
+            }
           }
         } catch (IOException e) {
           e.printStackTrace();
@@ -51,14 +84,86 @@ public class ChatClient {
     }
   }
 
-  public void sendMessage(Message message) {
-    String jsonMessage = JsonUtils.toJson(message);
-    System.out.println("Sending message: " + jsonMessage);
-    out.println(jsonMessage);
+  // 先请求压缩的二进制协议（-Dchatter.compression=false 时跳过），不支持压缩的旧服务端
+  // 返回错误后再请求 binary/1；仍被拒绝时继续使用 JSON 行
+  private void negotiateBinary() throws IOException {
+    boolean wantCompression =
+        !"false".equalsIgnoreCase(System.getProperty("chatter.compression"));
+    String accepted = hello(wantCompression ? BinaryCodec.COMPRESSED_PROTOCOL
+                                            : BinaryCodec.PROTOCOL);
+    if (accepted == null && wantCompression) {
+      accepted = hello(BinaryCodec.PROTOCOL);
+    }
+    binary = accepted != null;
+    compressed = BinaryCodec.COMPRESSED_PROTOCOL.equals(accepted);
+    System.out.println("Negotiated protocol: " +
+                       (binary ? accepted : "json"));
+  }
+
+  // 发送 hello 并同步等待确认，返回服务端实际使用的协议，被拒绝时返回 null
+  private String hello(String protocol) throws IOException {
+    writeLine(MessageJsonCodec.encode(Message.createHelloRequest(protocol)));
+    socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+    try {
+      String reply = readLine();
+      Message response = reply == null ? null : MessageJsonCodec.decode(reply);
+      boolean accepted = response != null &&
+                         "hello".equals(response.getType()) &&
+                         "success".equals(response.getStatus());
+      return accepted ? response.getMessage() : null;
+    } finally {
+      socket.setSoTimeout(0);
+    }
+  }
+
+  // 逐字节读取一行，避免 Reader 预读走握手之后的二进制数据
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1 && b != '\n') {
+      line.write(b);
+    }
+    if (b == -1 && line.size() == 0) {
+      return null;
+    }
+    return line.toString(StandardCharsets.UTF_8).trim();
+  }
+
+  // 服务端的心跳在读线程上直接回复，不进入界面队列
+  private void dispatch(Message message) {
+    if ("ping".equals(message.getType())) {
+      sendMessage(new Message("pong", null, message.getText()));
+      return;
+    }
+    dispatcher.submit(message);
+  }
+
+  // 界面线程发消息、读线程回复心跳，写出需要串行
+  public synchronized void sendMessage(Message message) {
+    try {
+      if (binary) {
+        String type = message.getType();
+        HotPathLog.print(System.out, () -> "Sending message: " + type);
+        out.write(BinaryCodec.encodeFrame(message, compressed));
+        out.flush();
+      } else {
+        String jsonMessage = MessageJsonCodec.encode(message);
+        HotPathLog.print(System.out,
+                         () -> "Sending message: " + jsonMessage);
+        writeLine(jsonMessage);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void writeLine(String line) throws IOException {
+    out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    out.flush();
   }
 
   public void setMessageListener(Consumer<Message> messageListener) {
-    this.messageListener = messageListener;
+    handoff.setListener(messageListener);
     System.out.println("Message listener set: " +
                        messageListener); // 添加设置日志
   }
@@ -70,4 +175,4 @@ public class ChatClient {
       e.printStackTrace();
     }
   }
-}
\ No newline at end of file
+}
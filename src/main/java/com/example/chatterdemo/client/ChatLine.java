@@ -0,0 +1,12 @@
+package com.example.chatterdemo.client;
+
+import com.example.chatterdemo.model.Message;
+
+// 聊天列表中的一行：消息本身和显示用的时间
+record ChatLine(Message message, String time) {
+  // 服务端序号，系统提示、错误和尚未确认的自己的消息没有
+  Long cursor() {
+    String cursor = message.getCursor();
+    return cursor != null ? Long.parseLong(cursor) : null;
+  }
+}
@@ -0,0 +1,123 @@
+package com.example.chatterdemo.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+// 聊天窗口里显示的一段时间上连续的消息，最多 maxLines 行：向前翻页插到最前面，
+// 实时消息追加到最后，超出上限时淘汰离阅读位置远的一端。最新的几行被淘汰后窗口与
+// 实时消息脱节，之后的实时消息不再追加，等回到底部时清空并从最新一页重新加载。
+// 不依赖 JavaFX，只在 FX 线程上使用
+final class ChatTimeline {
+  private final List<ChatLine> lines;
+  private final int maxLines;
+  private Long newestSeen; // 收到过的最大序号，包括自己消息的确认
+  private boolean exhausted; // 更早的消息已全部加载
+  private boolean detached;
+  // 已显示、还没收到服务端确认的自己的消息，按发送顺序
+  private final Deque<ChatLine> unconfirmed = new ArrayDeque<>();
+
+  ChatTimeline(List<ChatLine> lines, int maxLines) {
+    this.lines = lines;
+    this.maxLines = maxLines;
+  }
+
+  boolean isExhausted() { return exhausted; }
+
+  boolean isDetached() { return detached; }
+
+  // 收到但不显示的消息也要记下序号
+  void seen(String cursor) {
+    if (cursor == null)
+      return;
+    long value = Long.parseLong(cursor);
+    if (newestSeen == null || value > newestSeen)
+      newestSeen = value;
+  }
+
+  // following 表示正停在底部：满了淘汰最早的一行。否则用户正往上翻看，
+  // 淘汰最新的一端，这一行也不加入。返回是否加入
+  boolean appendLive(ChatLine line, boolean following) {
+    seen(line.message().getCursor());
+    if (detached)
+      return false;
+    if (lines.size() >= maxLines) {
+      if (!following) {
+        detached = true;
+        return false;
+      }
+      lines.subList(0, lines.size() - maxLines + 1).clear();
+      exhausted = false; // 被淘汰的可以再翻页取回
+    }
+    lines.add(line);
+    return true;
+  }
+
+  // 自己发送的消息不经过广播，序号由之后的确认补上
+  void appendOwn(ChatLine line) {
+    if (appendLive(line, true))
+      unconfirmed.add(line);
+  }
+
+  // 按发送顺序找到内容相同的一行补上序号；排在它前面的是被服务端拒绝（如限流）的消息，
+  // 不会再有确认
+  void confirm(String text, String cursor) {
+    seen(cursor);
+    ChatLine line;
+    while ((line = unconfirmed.poll()) != null) {
+      if (Objects.equals(line.message().getText(), text)) {
+        line.message().setCursor(cursor);
+        return;
+      }
+    }
+  }
+
+  // 下一页的起点：窗口里最早一条有序号的消息，没有时从最新的开始
+  String olderCursor() {
+    Long oldest = oldestCursor();
+    return oldest != null ? oldest.toString() : null;
+  }
+
+  // 插入更早的一页，返回插入的行数；nextCursor 为空表示没有更早的了。
+  // 从最新开始的一页可能与窗口重叠：跳过不早于窗口里最早序号的，窗口里没有序号时
+  // 跳过比收到过的都新的（只能是还没确认的自己的消息）
+  int prependPage(List<ChatLine> page, String nextCursor) {
+    Long bound = oldestCursor();
+    if (bound == null && newestSeen != null)
+      bound = newestSeen + 1;
+    List<ChatLine> older = new ArrayList<>(page.size());
+    for (ChatLine line : page) {
+      if (bound == null || line.cursor() < bound)
+        older.add(line);
+    }
+    if (nextCursor == null)
+      exhausted = true;
+    if (older.isEmpty())
+      return 0;
+    lines.addAll(0, older);
+    if (lines.size() > maxLines) {
+      lines.subList(maxLines, lines.size()).clear();
+      detached = true;
+    }
+    return older.size();
+  }
+
+  // 清空窗口，之后从最新的一页重新向前翻
+  void reset() {
+    lines.clear();
+    unconfirmed.clear();
+    exhausted = false;
+    detached = false;
+  }
+
+  private Long oldestCursor() {
+    for (ChatLine line : lines) {
+      Long cursor = line.cursor();
+      if (cursor != null)
+        return cursor;
+    }
+    return null;
+  }
+}
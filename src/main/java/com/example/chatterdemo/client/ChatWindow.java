@@ -1,26 +1,55 @@
 package com.example.chatterdemo.client;
 
 import com.example.chatterdemo.model.Message;
+import java.time.Instant;
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
-import javafx.application.Platform;
+import javafx.animation.PauseTransition;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 public class ChatWindow extends BorderPane {
+  private static final int HISTORY_PAGE_SIZE = 50;
+  // 翻页请求可能被服务端限流丢弃而没有任何回复，超时后允许重新请求
+  private static final Duration HISTORY_TIMEOUT = Duration.seconds(10);
+  // 内存中最多保留的消息条数，可用 -Dchatter.chatMaxLines 调整
+  private static final int MAX_LINES = Math.max(
+      HISTORY_PAGE_SIZE, Integer.getInteger("chatter.chatMaxLines", 1000));
+
   private final ChatClient client;
   private final String nickname;
-  private final TextArea chatDisplay;
+  // 只为可见行创建并复用单元格，渲染代价与会话时长无关
+  private final ListView<ChatLine> chatDisplay;
+  private final ObservableList<ChatLine> lines =
+      FXCollections.observableArrayList();
+  private final ChatTimeline timeline = new ChatTimeline(lines, MAX_LINES);
+  private ScrollBar verticalBar;
   private final TextField messageInput;
   private final Label statusLabel;
   private final DateTimeFormatter timeFormatter;
   private final Runnable logoutListener; // 返回登录窗口的回调
+  private final DateTimeFormatter historyTimeFormatter =
+      DateTimeFormatter.ofPattern("MM-dd HH:mm:ss");
+  // 正在收取的一页历史消息
+  private final List<Message> historyPage = new ArrayList<>();
+  private boolean historyLoading;
+  private final PauseTransition historyTimeout =
+      new PauseTransition(HISTORY_TIMEOUT);
 
   public ChatWindow(ChatClient client, String nickname,
                     Runnable logoutListener) {
@@ -52,11 +81,35 @@ public class ChatWindow extends BorderPane {
     setTop(header);
 
     // ===== 中部聊天显示 =====
-    chatDisplay = new TextArea();
+    chatDisplay = new ListView<>(lines);
     chatDisplay.getStyleClass().add("chat-display");
-    chatDisplay.setEditable(false);
-    chatDisplay.setWrapText(true);
+    chatDisplay.setFocusTraversable(false);
     chatDisplay.setPrefHeight(400);
+    chatDisplay.setCellFactory(list -> new ChatLineCell());
+    // 滚动到顶部时才加载更早的一页，与实时消息脱节后回到底部时重新加载最新的；
+    // 内容不足一屏时没有滚动条，用滚轮触发
+    chatDisplay.skinProperty().addListener((obs, oldSkin, skin) -> {
+      for (Node node : chatDisplay.lookupAll(".scroll-bar")) {
+        if (node instanceof ScrollBar bar &&
+            bar.getOrientation() == Orientation.VERTICAL) {
+          verticalBar = bar;
+          bar.valueProperty().addListener((o, oldValue, value) -> {
+            if (value.doubleValue() <= bar.getMin() &&
+                oldValue.doubleValue() > bar.getMin())
+              requestOlderMessages();
+            else if (value.doubleValue() >= bar.getMax() &&
+                     oldValue.doubleValue() < bar.getMax())
+              reloadIfDetached();
+          });
+        }
+      }
+    });
+    chatDisplay.addEventFilter(ScrollEvent.SCROLL, e -> {
+      if (e.getDeltaY() > 0 && isAtTop())
+        requestOlderMessages();
+      else if (e.getDeltaY() < 0 && isAtBottom())
+        reloadIfDetached();
+    });
     appendSystemMessage("Welcome to the my chat room!");
     appendSystemMessage("You are logged in as " + nickname + " ~");
     setCenter(chatDisplay);
@@ -84,7 +137,7 @@ public class ChatWindow extends BorderPane {
 
     Button clearButton = new Button("Clear ✿");
     clearButton.getStyleClass().add("secondary-button");
-    clearButton.setOnAction(e -> chatDisplay.clear());
+    clearButton.setOnAction(e -> clearLines());
 
     Button exitButton = new Button("Exit ❀");
     exitButton.getStyleClass().add("button");
@@ -99,16 +152,34 @@ public class ChatWindow extends BorderPane {
     bottomContainer.getChildren().addAll(inputArea, statusLabel);
     setBottom(bottomContainer); // 修复变量名
 
+    historyTimeout.setOnFinished(e -> resetHistoryLoading());
+
     // ===== 消息监听器 =====
     client.setMessageListener(this::handleMessage);
   }
 
+  // 清空后从最新的消息重新向前翻页
+  private void clearLines() {
+    timeline.reset();
+  }
+
+  // 最新的消息被淘汰过，窗口与实时消息脱节：清空后从最新一页重新加载
+  private void reloadIfDetached() {
+    if (!timeline.isDetached() || historyLoading)
+      return;
+    timeline.reset();
+    requestOlderMessages();
+  }
+
   private void sendMessage() {
     String text = messageInput.getText().trim();
     if (!text.isEmpty()) {
+      reloadIfDetached();
       Message message = new Message("message", nickname, text);
       client.sendMessage(message);
-      appendUserMessage(nickname, text);
+      timeline.appendOwn(new ChatLine(new Message("message", nickname, text),
+                                      LocalTime.now().format(timeFormatter)));
+      chatDisplay.scrollTo(lines.size() - 1);
       messageInput.clear();
     }
   }
@@ -118,40 +189,130 @@ public class ChatWindow extends BorderPane {
       return;
     switch (message.getType()) {
     case "message":
-      if (!nickname.equals(message.getNickname())) {
-        appendUserMessage(message.getNickname(), message.getText());
+      if (message.getStatus() != null) {
+        // 服务端对自己消息的确认，带着它在日志中的序号
+        timeline.confirm(message.getText(), message.getCursor());
+      } else if (!nickname.equals(message.getNickname())) {
+        appendLine(message);
+      } else {
+        timeline.seen(message.getCursor());
       }
       break;
     case "system":
       appendSystemMessage(message.getText());
       break;
     case "error":
+      // 服务端无法处理请求（格式错误、限流等）时只回复通用错误，不带 history 结束响应
+      resetHistoryLoading();
       appendErrorMessage(message.getMessage());
       break;
+    case "history":
+      handleHistory(message);
+      break;
     }
   }
 
-  private void appendUserMessage(String nickname, String text) {
-    Platform.runLater(() -> {
-      String timestamp = LocalTime.now().format(timeFormatter);
-      chatDisplay.appendText("[" + timestamp + "] " + nickname + ": " + text +
-                             "\n");
-    });
+  private void requestOlderMessages() {
+    if (historyLoading || timeline.isExhausted())
+      return;
+    historyLoading = true;
+    historyTimeout.playFromStart();
+    client.sendMessage(Message.createHistoryRequest(
+        null, timeline.olderCursor(), HISTORY_PAGE_SIZE));
+  }
+
+  // 一页历史消息逐条到达，收到带 status 的结束响应后一次性插到最前面
+  private void handleHistory(Message message) {
+    if (message.getStatus() == null) {
+      historyPage.add(message);
+      return;
+    }
+    historyTimeout.stop();
+    historyLoading = false;
+    if (!"success".equals(message.getStatus())) {
+      historyPage.clear();
+      appendErrorMessage(message.getMessage());
+      return;
+    }
+    List<ChatLine> page = new ArrayList<>(historyPage.size());
+    for (Message item : historyPage) {
+      String timestamp = Instant.ofEpochMilli(Long.parseLong(item.getMessage()))
+                             .atZone(ZoneId.systemDefault())
+                             .format(historyTimeFormatter);
+      page.add(new ChatLine(item, timestamp));
+    }
+    historyPage.clear();
+    // 插入后保持当前看到的位置；重新加载时窗口原本为空，停在最新的一行
+    int added = timeline.prependPage(page, message.getCursor());
+    if (added > 0)
+      chatDisplay.scrollTo(added == lines.size() ? added - 1 : added);
+  }
+
+  // 出错或超时：放弃正在收取的一页
+  private void resetHistoryLoading() {
+    historyTimeout.stop();
+    historyLoading = false;
+    historyPage.clear();
   }
 
   private void appendSystemMessage(String text) {
-    Platform.runLater(() -> {
-      String timestamp = LocalTime.now().format(timeFormatter);
-      chatDisplay.appendText("[" + timestamp + "] >>> " + text +
-                             " <<< ฅ(>ω<*ฅ)\n");
-    });
+    appendLine(new Message("system", null, text));
   }
 
   private void appendErrorMessage(String text) {
-    Platform.runLater(() -> {
-      String timestamp = LocalTime.now().format(timeFormatter);
-      chatDisplay.appendText("[" + timestamp + "] ERROR: " + text + " (T_T)\n");
-    });
+    appendLine(new Message("error", null, text));
+  }
+
+  // 只在 FX 线程上调用：消息由 ChatClient 按帧成批派发，这里不再经过 runLater
+  private void appendLine(Message message) {
+    boolean follow = isAtBottom();
+    ChatLine line =
+        new ChatLine(message, LocalTime.now().format(timeFormatter));
+    if (timeline.appendLive(line, follow) && follow)
+      chatDisplay.scrollTo(lines.size() - 1);
+  }
+
+  private boolean isAtTop() {
+    return verticalBar == null || !verticalBar.isVisible() ||
+        verticalBar.getValue() <= verticalBar.getMin();
+  }
+
+  private boolean isAtBottom() {
+    return verticalBar == null || !verticalBar.isVisible() ||
+        verticalBar.getValue() >= verticalBar.getMax();
+  }
+
+  private static final class ChatLineCell extends ListCell<ChatLine> {
+    ChatLineCell() {
+      setWrapText(true);
+      setPrefWidth(0); // 按列表宽度换行，不出现水平滚动条
+    }
+
+    @Override
+    protected void updateItem(ChatLine line, boolean empty) {
+      super.updateItem(line, empty);
+      getStyleClass().removeAll("chat-line-system", "chat-line-error");
+      if (empty || line == null) {
+        setText(null);
+        return;
+      }
+      Message message = line.message();
+      switch (message.getType()) {
+      case "system":
+        getStyleClass().add("chat-line-system");
+        setText("[" + line.time() + "] >>> " + message.getText() +
+                " <<< ฅ(>ω<*ฅ)");
+        break;
+      case "error":
+        getStyleClass().add("chat-line-error");
+        setText("[" + line.time() + "] ERROR: " + message.getText() +
+                " (T_T)");
+        break;
+      default:
+        setText("[" + line.time() + "] " + message.getNickname() + ": " +
+                message.getText());
+      }
+    }
   }
 
   private void handleLogout() {
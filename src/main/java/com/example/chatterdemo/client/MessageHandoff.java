@@ -0,0 +1,40 @@
+package com.example.chatterdemo.client;
+
+import com.example.chatterdemo.model.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// 监听器交接：服务端在登录成功后紧接着回放最近的消息，而聊天窗口要稍后才接管监听。
+// 把登录成功之后、下一个监听器设置之前收到的消息缓存起来，设置时按原顺序补发
+final class MessageHandoff {
+  private Consumer<Message> listener;
+  private List<Message> held; // 为 null 表示不缓存
+
+  synchronized void setListener(Consumer<Message> listener) {
+    this.listener = listener;
+    List<Message> pending = held;
+    held = null;
+    if (pending != null && listener != null) {
+      for (Message message : pending) {
+        listener.accept(message);
+      }
+    }
+  }
+
+  synchronized void deliver(Message message) {
+    if (held != null) {
+      held.add(message);
+      return;
+    }
+    if (listener == null) {
+      System.out.println("No message listener set!");
+      return;
+    }
+    listener.accept(message);
+    if ("login".equals(message.getType()) &&
+        "success".equals(message.getStatus())) {
+      held = new ArrayList<>();
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package com.example.chatterdemo.client;
+
+// 通过 JMX 暴露的客户端界面派发指标：每帧交给界面处理的消息批大小
+public interface UiDispatchMetricsMBean {
+  long getBatches();
+  long getMessages();
+  double getMeanBatchSize();
+  int getLastBatchSize();
+  int getMaxBatchSize();
+  int getPendingMessages();
+  int getMaxMessagesPerPulse();
+}
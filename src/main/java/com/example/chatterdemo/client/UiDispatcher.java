@@ -0,0 +1,109 @@
+package com.example.chatterdemo.client;
+
+import com.example.chatterdemo.model.Message;
+import java.lang.management.ManagementFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// 读线程把收到的消息放进并发队列，JavaFX 每一帧的脉冲里成批交给监听器处理，
+// 一批消息只触发一次布局。有消息时才启动 AnimationTimer，队列取空后停止，空闲时不占用脉冲；
+// 每帧最多处理 maxPerPulse 条，其余留到下一帧，输入和重绘不会被消息洪峰拖住
+final class UiDispatcher implements UiDispatchMetricsMBean {
+  private final Queue<Message> inbox = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final int maxPerPulse;
+  private final Consumer<Message> listener;
+  private final AnimationTimer timer = new AnimationTimer() {
+    @Override
+    public void handle(long now) {
+      drain();
+    }
+  };
+  // 只由 FX 线程写入
+  private volatile long batches;
+  private volatile long messages;
+  private volatile int lastBatchSize;
+  private volatile int maxBatchSize;
+
+  UiDispatcher(int maxPerPulse, Consumer<Message> listener) {
+    this.maxPerPulse = Math.max(1, maxPerPulse);
+    this.listener = listener;
+  }
+
+  // 任意线程调用
+  void submit(Message message) {
+    inbox.add(message);
+    pending.incrementAndGet();
+    if (scheduled.compareAndSet(false, true)) {
+      Platform.runLater(timer::start);
+    }
+  }
+
+  private void drain() {
+    int count = 0;
+    Message message;
+    while (count < maxPerPulse && (message = inbox.poll()) != null) {
+      count++;
+      try {
+        listener.accept(message);
+      } catch (RuntimeException e) {
+        e.printStackTrace(); // 一条消息出错不影响同批的其他消息
+      }
+    }
+    pending.addAndGet(-count);
+    if (count > 0) {
+      batches++;
+      messages += count;
+      lastBatchSize = count;
+      if (count > maxBatchSize) {
+        maxBatchSize = count;
+      }
+    }
+    if (inbox.isEmpty()) {
+      timer.stop();
+      scheduled.set(false);
+      // 停止前刚到达的消息没有触发调度，由这里补上
+      if (!inbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+        timer.start();
+      }
+    }
+  }
+
+  void registerMBean() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(
+          new StandardMBean(this, UiDispatchMetricsMBean.class),
+          new ObjectName(
+              "com.example.chatterdemo:type=ChatClient,name=UiDispatch"));
+    } catch (JMException e) {
+      System.out.println("UI dispatch metrics not registered: " + e);
+    }
+  }
+
+  @Override
+  public long getBatches() { return batches; }
+  @Override
+  public long getMessages() { return messages; }
+  @Override
+  public double getMeanBatchSize() {
+    long batchCount = batches;
+    return batchCount == 0 ? 0 : (double) messages / batchCount;
+  }
+  @Override
+  public int getLastBatchSize() { return lastBatchSize; }
+  @Override
+  public int getMaxBatchSize() { return maxBatchSize; }
+  @Override
+  public int getPendingMessages() { return pending.get(); }
+  @Override
+  public int getMaxMessagesPerPulse() { return maxPerPulse; }
+}
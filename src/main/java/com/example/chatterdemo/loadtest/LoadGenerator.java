@@ -0,0 +1,443 @@
+package com.example.chatterdemo.loadtest;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.BinaryCodec;
+import com.example.chatterdemo.utils.LatencyHistogram;
+import com.example.chatterdemo.utils.MessageJsonCodec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// 无界面的压测客户端：模拟大量用户同时登录并按固定速率发消息，统计吞吐和端到端投递延迟。
+// 用法：java ... com.example.chatterdemo.loadtest.LoadGenerator --users=1000 --rate=500
+// 消息正文以发送计划时间和本次运行的标识开头（t=<nanoTime>;r=<runId>;），接收方据此计算
+// 延迟。按计划时间而不是实际写出时间计时，服务端变慢导致发送线程阻塞时，排队时间也会计入
+// 延迟。加入聊天室时服务端回放的最近消息可能来自之前的运行，标识不同的不计入
+public class LoadGenerator {
+  private final String host;
+  private final int port;
+  private final int users;
+  private final long rampMillis;
+  private final int rate;
+  private final int payloadBytes;
+  private final int durationSeconds;
+  private final String protocol; // 握手时请求的协议，JSON 模式下为 null
+  private final int connectThreads;
+  private final int rooms;
+  private final int metricsPort;
+  private final String runTag =
+      "r=" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ";";
+
+  private final List<Session> sessions = new ArrayList<>();
+  private final LatencyHistogram loginLatency = new LatencyHistogram();
+  private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+  private final AtomicLong loginFailures = new AtomicLong();
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong expected = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  // 接收端 read 系统调用次数：服务端合并写出时，每次读到的消息更多、次数更少
+  private final AtomicLong socketReads = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private long loadBytesReceived;
+  private long loadSocketReads;
+  private long[] serverWrites; // 发送阶段服务端的套接字写次数和写出的帧数
+
+  public LoadGenerator(Map<String, String> options) {
+    host = options.getOrDefault("host", "localhost");
+    port = Integer.parseInt(options.getOrDefault("port", "12345"));
+    users = Integer.parseInt(options.getOrDefault("users", "500"));
+    // 所有用户在这段时间内均匀地发起登录，0 表示同时登录
+    rampMillis = Long.parseLong(options.getOrDefault("rampMillis", "0"));
+    // 所有会话合计每秒发送的消息数
+    rate = Integer.parseInt(options.getOrDefault("rate", "100"));
+    payloadBytes = Integer.parseInt(options.getOrDefault("payloadBytes", "64"));
+    durationSeconds =
+        Integer.parseInt(options.getOrDefault("durationSeconds", "30"));
+    // binary、deflate（压缩的二进制协议）或 json
+    switch (options.getOrDefault("protocol", "binary")) {
+    case "json":
+      protocol = null;
+      break;
+    case "deflate":
+      protocol = BinaryCodec.COMPRESSED_PROTOCOL;
+      break;
+    default:
+      protocol = BinaryCodec.PROTOCOL;
+    }
+    connectThreads =
+        Integer.parseInt(options.getOrDefault("connectThreads", "64"));
+    // 大于 0 时用户轮流加入 room-0 .. room-(N-1) 并只在自己的聊天室发言，否则都在大厅
+    rooms = Integer.parseInt(options.getOrDefault("rooms", "0"));
+    // 服务端开启了 metricsPort 时填写，用于统计服务端每次写调用发出的帧数
+    metricsPort = Integer.parseInt(options.getOrDefault("metricsPort", "0"));
+  }
+
+  public void run() throws InterruptedException {
+    System.out.printf(Locale.ROOT,
+                      "Connecting %d users to %s:%d (%s, ramp %d ms)%n", users,
+                      host, port, protocol != null ? protocol : "json",
+                      rampMillis);
+    loginStorm();
+    System.out.printf(Locale.ROOT,
+                      "Logged in %d/%d users, login latency %s%n",
+                      sessions.size(), users, percentiles(loginLatency));
+    if (sessions.isEmpty()) {
+      return;
+    }
+    long readsBefore = socketReads.get();
+    long bytesBefore = bytesReceived.get();
+    long[] writesBefore = scrapeServerWrites();
+    sendLoad();
+    // 留出时间让最后一批消息送达
+    Thread.sleep(1000);
+    loadSocketReads = socketReads.get() - readsBefore;
+    loadBytesReceived = bytesReceived.get() - bytesBefore;
+    long[] writesAfter = scrapeServerWrites();
+    if (writesBefore != null && writesAfter != null) {
+      serverWrites = new long[] {writesAfter[0] - writesBefore[0],
+                                 writesAfter[1] - writesBefore[1]};
+    }
+    for (Session session : sessions) {
+      session.close();
+    }
+    report();
+  }
+
+  private void loginStorm() throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(connectThreads);
+    CountDownLatch done = new CountDownLatch(users);
+    long start = System.nanoTime();
+    for (int i = 0; i < users; i++) {
+      long due = start + TimeUnit.MILLISECONDS.toNanos(rampMillis) * i /
+                             Math.max(1, users);
+      String username = "load" + i;
+      String room = rooms > 0 ? "room-" + (i % rooms) : null;
+      pool.execute(() -> {
+        try {
+          LockSupport.parkNanos(due - System.nanoTime());
+          Session session = new Session(username, room);
+          if (session.login()) {
+            loginLatency.recordNanos(session.loginNanos);
+            synchronized (sessions) {
+              sessions.add(session);
+            }
+            session.startReader();
+          } else {
+            loginFailures.incrementAndGet();
+            session.close();
+          }
+        } catch (IOException e) {
+          loginFailures.incrementAndGet();
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    pool.shutdown();
+  }
+
+  // 单线程按计划时间轮流让各会话发言
+  private void sendLoad() {
+    String padding =
+        "x".repeat(Math.max(0, payloadBytes - 22 - runTag.length()));
+    long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+    long nextReport = start + TimeUnit.SECONDS.toNanos(5);
+    long lastSent = 0;
+    long lastDelivered = 0;
+    Map<String, Integer> roomSizes = new HashMap<>();
+    for (Session session : sessions) {
+      roomSizes.merge(String.valueOf(session.room), 1, Integer::sum);
+    }
+    for (long i = 0;; i++) {
+      long due = start + i * interval;
+      if (due >= end) {
+        break;
+      }
+      long now = System.nanoTime();
+      if (due > now) {
+        LockSupport.parkNanos(due - now);
+      }
+      Session session = sessions.get((int) (i % sessions.size()));
+      Message message =
+          new Message("message", session.username,
+                      "t=" + due + ";" + runTag + padding);
+      message.setRoom(session.room);
+      session.send(message);
+      expected.addAndGet(roomSizes.get(String.valueOf(session.room)) - 1);
+      if (System.nanoTime() >= nextReport) {
+        long s = sent.get();
+        long d = delivered.get();
+        System.out.printf(Locale.ROOT,
+                          "  sent %d/s, delivered %d/s, latency %s%n",
+                          (s - lastSent) / 5, (d - lastDelivered) / 5,
+                          percentiles(deliveryLatency));
+        lastSent = s;
+        lastDelivered = d;
+        nextReport += TimeUnit.SECONDS.toNanos(5);
+      }
+    }
+  }
+
+  private void report() {
+    System.out.printf(Locale.ROOT, "Sessions:      %d (login failures %d)%n",
+                      sessions.size(), loginFailures.get());
+    System.out.printf(Locale.ROOT, "Sent:          %d (%.1f msg/s)%n",
+                      sent.get(), (double) sent.get() / durationSeconds);
+    System.out.printf(Locale.ROOT, "Delivered:     %d (%.1f msg/s, expected %d)%n",
+                      delivered.get(),
+                      (double) delivered.get() / durationSeconds,
+                      expected.get());
+    System.out.printf(Locale.ROOT,
+                      "Socket reads:  %d (%.1f/s, %.2f per delivered)%n",
+                      loadSocketReads,
+                      (double) loadSocketReads / durationSeconds,
+                      (double) loadSocketReads / Math.max(1, delivered.get()));
+    System.out.printf(Locale.ROOT,
+                      "Received:      %d bytes (%.1f KiB/s, %.1f per delivered)%n",
+                      loadBytesReceived,
+                      loadBytesReceived / 1024.0 / durationSeconds,
+                      (double) loadBytesReceived / Math.max(1, delivered.get()));
+    if (serverWrites != null) {
+      System.out.printf(Locale.ROOT,
+                        "Server writes: %d (%.1f/s, %.2f frames per write)%n",
+                        serverWrites[0],
+                        (double) serverWrites[0] / durationSeconds,
+                        (double) serverWrites[1] / Math.max(1, serverWrites[0]));
+    }
+    System.out.printf(Locale.ROOT, "Errors:        %d%n", errors.get());
+    System.out.printf(Locale.ROOT, "Login latency: %s%n",
+                      percentiles(loginLatency));
+    System.out.printf(Locale.ROOT, "Delivery:      %s%n",
+                      percentiles(deliveryLatency));
+  }
+
+  private static String percentiles(LatencyHistogram histogram) {
+    return String.format(Locale.ROOT,
+                         "p50=%.2fms p90=%.2fms p99=%.2fms p999=%.2fms " +
+                             "max=%.2fms (n=%d)",
+                         millis(histogram.percentileNanos(50)),
+                         millis(histogram.percentileNanos(90)),
+                         millis(histogram.percentileNanos(99)),
+                         millis(histogram.percentileNanos(99.9)),
+                         millis(histogram.maxNanos()), histogram.count());
+  }
+
+  private static double millis(long nanos) { return nanos / 1e6; }
+
+  // 读取服务端指标端点中的写调用次数和写出帧数，未开启或读取失败时返回 null
+  private long[] scrapeServerWrites() {
+    if (metricsPort <= 0) {
+      return null;
+    }
+    long[] values = new long[2];
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(
+             new URL("http://" + host + ":" + metricsPort + "/metrics")
+                 .openStream(),
+             StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("chatter_socket_writes_total ")) {
+          values[0] = Long.parseLong(line.substring(line.indexOf(' ') + 1));
+        } else if (line.startsWith("chatter_frames_written_total ")) {
+          values[1] = Long.parseLong(line.substring(line.indexOf(' ') + 1));
+        }
+      }
+      return values;
+    } catch (IOException | NumberFormatException e) {
+      System.out.println("Could not read server metrics: " + e);
+      return null;
+    }
+  }
+
+  private final class CountingInputStream extends FilterInputStream {
+    CountingInputStream(InputStream in) { super(in); }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        socketReads.incrementAndGet();
+        bytesReceived.addAndGet(n);
+      }
+      return n;
+    }
+  }
+
+  // 一个模拟用户：注册（已存在也算成功）、登录，然后由读线程统计收到的消息
+  private final class Session {
+    private final String username;
+    private final String room; // 为 null 时在大厅发言
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private BufferedReader reader; // JSON 模式下使用
+    private boolean binary;
+    private boolean compressed;
+    private long loginNanos; // 从发出登录请求到收到成功响应，不含握手和注册
+
+    Session(String username, String room) throws IOException {
+      this.username = username;
+      this.room = room;
+      socket = new Socket(host, port);
+      socket.setTcpNoDelay(true);
+      in = new BufferedInputStream(
+          new CountingInputStream(socket.getInputStream()));
+      out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    boolean login() throws IOException {
+      if (protocol != null) {
+        writeLine(
+            MessageJsonCodec.encode(Message.createHelloRequest(protocol)));
+        Message reply = MessageJsonCodec.decode(readRawLine());
+        binary = reply != null && "success".equals(reply.getStatus());
+        compressed = binary && BinaryCodec.COMPRESSED_PROTOCOL.equals(
+                                   reply.getMessage());
+      }
+      if (!binary) {
+        reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+      }
+      send(Message.createRegisterRequest(username, "password", username));
+      Message registered = read();
+      if (registered == null) {
+        return false;
+      }
+      long begin = System.nanoTime();
+      send(Message.createLoginRequest(username, "password"));
+      Message login = read();
+      if (login == null || !"success".equals(login.getStatus())) {
+        return false;
+      }
+      loginNanos = System.nanoTime() - begin;
+      if (room == null) {
+        return true;
+      }
+      send(Message.createJoinRequest(room));
+      // 跳过大厅里其他用户的上线通知
+      Message joined;
+      while ((joined = read()) != null && !"join".equals(joined.getType())) {
+      }
+      return joined != null && "success".equals(joined.getStatus());
+    }
+
+    void startReader() {
+      Thread thread = new Thread(null, this::readLoop, "load-" + username,
+                                 256 * 1024);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private void readLoop() {
+      try {
+        Message message;
+        while ((message = read()) != null) {
+          String text = message.getText();
+          if ("ping".equals(message.getType())) {
+            send(new Message("pong", null, text));
+            continue;
+          }
+          // 带状态的是服务端对自己发言的确认，不算投递
+          if (!"message".equals(message.getType()) ||
+              message.getStatus() != null || text == null ||
+              !text.startsWith("t=")) {
+            continue;
+          }
+          int end = text.indexOf(';');
+          if (end > 2 && text.startsWith(runTag, end + 1)) {
+            long due = Long.parseLong(text.substring(2, end));
+            deliveryLatency.recordNanos(System.nanoTime() - due);
+            delivered.incrementAndGet();
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        if (!socket.isClosed()) {
+          errors.incrementAndGet();
+        }
+      }
+    }
+
+    synchronized void send(Message message) {
+      try {
+        if (binary) {
+          out.write(BinaryCodec.encodeFrame(message, compressed));
+          out.flush();
+        } else {
+          writeLine(MessageJsonCodec.encode(message));
+        }
+        if ("message".equals(message.getType())) {
+          sent.incrementAndGet();
+        }
+      } catch (IOException e) {
+        errors.incrementAndGet();
+      }
+    }
+
+    private Message read() throws IOException {
+      if (binary) {
+        return BinaryCodec.readFrame(in);
+      }
+      String line = reader.readLine();
+      return line == null ? null : MessageJsonCodec.decode(line);
+    }
+
+    private void writeLine(String line) throws IOException {
+      out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+
+    // 握手阶段逐字节读取，避免预读走之后的二进制数据
+    private String readRawLine() throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != -1 && b != '\n') {
+        line.write(b);
+      }
+      return line.toString(StandardCharsets.UTF_8);
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // 忽略
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (arg.startsWith("--") && eq > 2) {
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      }
+    }
+    new LoadGenerator(options).run();
+  }
+}
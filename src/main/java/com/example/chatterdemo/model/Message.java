@@ -1,11 +1,14 @@
 package com.example.chatterdemo.model;
 
 public class Message {
-  private String type;     // 消息类型: login, register, message, logout
+  private String type;     // 消息类型: hello, login, register, message, direct,
+                           // join, leave, history, ping, pong, logout
   private String nickname; // 用户昵称
   private String text;     // 消息文本
   private String status;   // 状态: success, error
   private String message;  // 附加消息内容
+  private String room;     // 聊天室名称，为空表示大厅
+  private String cursor;   // 消息日志中的序号，向前翻页读取历史时作为起点
 
   public Message() {}
 
@@ -46,6 +49,50 @@ public class Message {
     return msg;
   }
 
+  // 协议协商请求构造器，text 为客户端希望使用的编码格式
+  public static Message createHelloRequest(String protocol) {
+    Message msg = new Message();
+    msg.type = "hello";
+    msg.text = protocol;
+    return msg;
+  }
+
+  // 私聊消息构造器，接收者用户名放在 message 字段（与注册请求中的用户名相同）
+  public static Message createDirectMessage(String recipient, String text) {
+    Message msg = new Message();
+    msg.type = "direct";
+    msg.text = text;
+    msg.message = recipient;
+    return msg;
+  }
+
+  // 加入聊天室请求构造器
+  public static Message createJoinRequest(String room) {
+    Message msg = new Message();
+    msg.type = "join";
+    msg.room = room;
+    return msg;
+  }
+
+  // 离开聊天室请求构造器
+  public static Message createLeaveRequest(String room) {
+    Message msg = new Message();
+    msg.type = "leave";
+    msg.room = room;
+    return msg;
+  }
+
+  // 历史消息请求构造器，读取 cursor 之前的最多 pageSize 条，cursor 为空表示从最新的开始
+  public static Message createHistoryRequest(String room, String cursor,
+                                             int pageSize) {
+    Message msg = new Message();
+    msg.type = "history";
+    msg.room = room;
+    msg.cursor = cursor;
+    msg.text = String.valueOf(pageSize);
+    return msg;
+  }
+
   // Getters and Setters
   public String getType() { return type; }
   public void setType(String type) { this.type = type; }
@@ -57,4 +104,8 @@ public class Message {
   public void setStatus(String status) { this.status = status; }
   public String getMessage() { return message; }
   public void setMessage(String message) { this.message = message; }
+  public String getRoom() { return room; }
+  public void setRoom(String room) { this.room = room; }
+  public String getCursor() { return cursor; }
+  public void setCursor(String cursor) { this.cursor = cursor; }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 阻塞模式连接：由 executor 中的一个线程（平台线程或虚拟线程）执行读循环，
+// 发送队列非空时再向同一个 executor 提交写任务，写完即退出，空闲连接不占写线程
+final class BlockingConnection implements Connection {
+  private static final Logger logger =
+      Logger.getLogger(BlockingConnection.class.getName());
+  private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+  private final SocketChannel channel;
+  private final ExecutorService executorService;
+  private final InboundDecoder decoder;
+  private final OutboundQueue outbound;
+  private final ConnectionHandler handler;
+  private final String remoteAddress;
+  private final AtomicBoolean writerScheduled = new AtomicBoolean();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  // 发送队列溢出后不再接受新帧，等待异步关闭
+  private final AtomicBoolean overflowed = new AtomicBoolean();
+  private final long flushDelayNanos;
+
+  BlockingConnection(SocketChannel channel, ExecutorService executorService,
+                     ServerConfig config,
+                     Function<Connection, ConnectionHandler> handlerFactory)
+      throws IOException {
+    this.channel = channel;
+    this.executorService = executorService;
+    this.flushDelayNanos =
+        TimeUnit.MILLISECONDS.toNanos(config.getWriteCoalesceMillis());
+    this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+    this.outbound =
+        new OutboundQueue(config.getOutboundQueueCapacity(),
+                          config.getOverflowPolicy(), this::skippedNotice);
+    // decoder 依赖处理器，最后创建；处理器构造时只保存连接，
+    // 交给其他线程（如空闲回收）要等 onOpen
+    this.handler = handlerFactory.apply(this);
+    this.decoder =
+        new InboundDecoder(config.getMaxLineBytes(), handler, closed);
+  }
+
+  private Frame skippedNotice(int skipped) {
+    return handler.skippedNotice(skipped);
+  }
+
+  void run() {
+    handler.onOpen();
+    ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    try {
+      while (!closed.get()) {
+        readBuffer.clear();
+        if (channel.read(readBuffer) < 0) {
+          break;
+        }
+        readBuffer.flip();
+        decoder.feed(readBuffer);
+      }
+    } catch (IOException e) {
+      if (!closed.get()) {
+        logger.log(Level.WARNING, "Client connection error", e);
+      }
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public void send(Frame frame) {
+    if (closed.get() || overflowed.get()) {
+      frame.release();
+      return;
+    }
+    if (!outbound.offer(frame)) {
+      frame.release();
+      // 发送方可能正持有聊天室的锁在广播，onClose 又要向其他聊天室广播，
+      // 在这里同步关闭会嵌套加锁，交给另一个任务执行
+      if (overflowed.compareAndSet(false, true)) {
+        logger.warning("Outbound queue overflow, disconnecting " +
+                       remoteAddress);
+        try {
+          executorService.execute(this::close);
+        } catch (RejectedExecutionException e) {
+          close();
+        }
+      }
+      return;
+    }
+    scheduleWriter();
+  }
+
+  private void scheduleWriter() {
+    if (writerScheduled.compareAndSet(false, true)) {
+      try {
+        executorService.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        close();
+      }
+    }
+  }
+
+  // 同一时刻最多只有一个写任务在运行，批次归写任务所有。
+  // 开始写之前先等待 flushDelay，让这段时间内入队的帧合并写出
+  private void drain() {
+    if (flushDelayNanos > 0) {
+      LockSupport.parkNanos(flushDelayNanos);
+    }
+    FrameBatch batch = new FrameBatch();
+    try {
+      while (batch.fill(outbound)) {
+        handler.onWrite(batch.write(channel));
+      }
+    } catch (IOException e) {
+      if (!closed.get()) {
+        logger.warning("Error sending message to client");
+      }
+      batch.release();
+      close();
+      return;
+    }
+    writerScheduled.set(false);
+    if (!outbound.isEmpty() && !closed.get()) {
+      scheduleWriter();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error closing client resources", e);
+    }
+    outbound.clear();
+    if (outbound.dropped() > 0) {
+      logger.info("Connection " + remoteAddress + " dropped " +
+                  outbound.dropped() + " outbound frame(s), max queue depth " +
+                  outbound.maxDepth());
+    }
+    handler.onClose();
+  }
+
+  @Override
+  public void switchInboundToBinary() {
+    decoder.switchToBinary();
+  }
+
+  @Override
+  public String remoteAddress() {
+    return remoteAddress;
+  }
+
+  @Override
+  public OutboundQueue outboundQueue() {
+    return outbound;
+  }
+}
@@ -0,0 +1,51 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.utils.HotPathLog;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 阻塞模式：每个连接占用 executor 中的一个线程执行读循环，线程类型由 executor 决定
+final class BlockingTransport implements Transport {
+  private static final Logger logger =
+      Logger.getLogger(BlockingTransport.class.getName());
+
+  private final ServerSocketChannel serverChannel;
+  private final ExecutorService executorService;
+  private final Function<Connection, ConnectionHandler> handlerFactory;
+  private final ServerConfig config;
+  private volatile boolean running = true;
+
+  BlockingTransport(ServerSocketChannel serverChannel, ServerConfig config,
+                    ExecutorService executorService,
+                    Function<Connection, ConnectionHandler> handlerFactory) {
+    this.serverChannel = serverChannel;
+    this.config = config;
+    this.executorService = executorService;
+    this.handlerFactory = handlerFactory;
+  }
+
+  @Override
+  public void serve() throws IOException {
+    while (running) {
+      SocketChannel channel = serverChannel.accept();
+      SocketAddress remote = channel.getRemoteAddress();
+      HotPathLog.log(logger, Level.INFO,
+                     () -> "New client connected: " + remote);
+      BlockingConnection connection =
+          new BlockingConnection(channel, executorService, config,
+                                 handlerFactory);
+      executorService.submit(connection::run);
+    }
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+  }
+}
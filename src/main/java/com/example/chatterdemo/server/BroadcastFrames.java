@@ -0,0 +1,32 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+
+// 一次广播中每种编码格式最多编码一次，同格式的接收者共享同一个帧。只在广播线程上使用
+final class BroadcastFrames {
+  private final Message message;
+  private final Frame[] frames = new Frame[WireFormat.values().length];
+
+  BroadcastFrames(Message message) { this.message = message; }
+
+  // 返回的引用交给接收者
+  Frame retain(WireFormat format) {
+    Frame frame = frames[format.ordinal()];
+    if (frame == null) {
+      frame = format.encode(message);
+      frames[format.ordinal()] = frame;
+    }
+    return frame.retain();
+  }
+
+  // 本次广播已经编码过的帧，没有该格式的接收者时为 null；不增加引用
+  Frame encoded(WireFormat format) { return frames[format.ordinal()]; }
+
+  void release() {
+    for (Frame frame : frames) {
+      if (frame != null) {
+        frame.release();
+      }
+    }
+  }
+}
@@ -1,52 +1,134 @@
 package com.example.chatterdemo.server;
 
 import com.example.chatterdemo.model.Message;
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.example.chatterdemo.utils.BinaryCodec;
+import com.example.chatterdemo.utils.HotPathLog;
+import com.example.chatterdemo.utils.MessageJsonCodec;
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ChatServer {
-  private static final int PORT = 12345;
   private static final Logger logger =
       Logger.getLogger(ChatServer.class.getName());
-  private final ServerSocket serverSocket;
+  // 登录后自动加入、不能离开的默认聊天室；不带 room 的消息都发到这里
+  static final String LOBBY = "lobby";
+  private static final int MAX_ROOM_NAME_LENGTH = 64;
+  // 历史翻页的默认和最大每页条数
+  private static final int HISTORY_PAGE_SIZE = 50;
+  private static final int MAX_HISTORY_PAGE_SIZE = 200;
+  private final ServerConfig config;
+  private final ServerSocketChannel serverChannel;
   private final Map<String, ClientHandler> clients = new ConcurrentHashMap<>();
-  private final Map<String, JsonObject> users = new ConcurrentHashMap<>();
-  private final Gson gson = new Gson();
+  private final UserDirectory users = new UserDirectory();
+  private final RoomIndex<ClientHandler> rooms = new RoomIndex<>();
   private final ExecutorService executorService;
+  private final Transport transport;
 
   private volatile boolean running = true;
-  private final String usersFilePath = getUsersFilePath();
+  private final AtomicBoolean shutdownStarted = new AtomicBoolean();
+  private final String usersFilePath;
+  private final UserStore userStore;
+  private final MessageLog messageLog;
+  // 聊天室 -> 最近消息，登录或加入时回放。聊天室没有成员后丢弃（大厅除外），
+  // 内存上限约为有成员的聊天室数 × recentHistorySize 条消息
+  private final Map<String, RecentMessages> recentMessages =
+      new ConcurrentHashMap<>();
+  private final ServerMetrics metrics =
+      new ServerMetrics(clients::size, this::liveConnectionDrops,
+                        this::historyAppendsDropped);
+  private final MetricsExporter metricsExporter;
+  // 未配置集群时为 null
+  private final ClusterNode cluster;
+  // 关闭心跳时为 null
+  private final IdleReaper idleReaper;
 
   public ChatServer() throws IOException {
-    serverSocket = new ServerSocket(PORT);
-    executorService = Executors.newCachedThreadPool();
+    this(new ServerConfig());
+  }
+
+  public ChatServer(ServerConfig config) throws IOException {
+    this.config = config;
+    HotPathLog.configure(config.getLogMode(), config.getLogRateLimit());
+    executorService = config.getTransport() == ServerConfig.TransportMode.VIRTUAL
+                          ? VirtualThreads.newThreadPerTaskExecutor()
+                          : Executors.newCachedThreadPool();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(config.getPort()));
+    if (config.getDataDir() != null) {
+      Path dataDir = Paths.get(config.getDataDir());
+      Files.createDirectories(dataDir);
+      usersFilePath = dataDir.resolve("users.json").toString();
+    } else {
+      usersFilePath = getUsersFilePath();
+    }
+    userStore = new UserStore(Paths.get(usersFilePath), users,
+                              config.getUserLogCompactThreshold());
     loadUsers();
-    logger.info("Server initialized on port " + PORT);
+    Path historyDir = config.getHistoryDir() != null
+                          ? Paths.get(config.getHistoryDir())
+                          : Paths.get(usersFilePath).resolveSibling("history");
+    messageLog = new MessageLog(
+        historyDir, config.getHistorySegmentBytes(),
+        TimeUnit.HOURS.toMillis(config.getHistoryRetentionHours()));
+    messageLog.open();
+    switch (config.getTransport()) {
+    case BLOCKING:
+    case VIRTUAL:
+      transport = new BlockingTransport(serverChannel, config, executorService,
+                                        ClientHandler::new);
+      break;
+    case NIO:
+    default:
+      transport = new NioTransport(serverChannel, config, ClientHandler::new);
+    }
+    metricsExporter = new MetricsExporter(metrics, config, localPort());
+    idleReaper = config.getPingIntervalSeconds() > 0
+                     ? new IdleReaper(TimeUnit.SECONDS.toMillis(
+                                          config.getPingIntervalSeconds()),
+                                      TimeUnit.SECONDS.toMillis(
+                                          config.getIdleTimeoutSeconds()),
+                                      metrics)
+                     : null;
+    cluster = config.isClustered()
+                  ? new ClusterNode(config.getNodeId(), config.getClusterPort(),
+                                    ClusterNode.parsePeers(
+                                        config.getClusterPeers()),
+                                    config.getClusterSecret(),
+                                    config.getClusterMaxHops(),
+                                    new ClusterRelay())
+                  : null;
+    logger.info("Server initialized on port " + config.getPort() + " (" +
+                config.getTransport() + " transport)");
   }
 
   public void startServer() {
-    logger.info("Server started and listening on port " + PORT);
+    logger.info("Server started and listening on port " + config.getPort());
     Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    metricsExporter.start();
+    if (idleReaper != null) {
+      idleReaper.start();
+    }
 
     try {
-      while (running) {
-        Socket clientSocket = serverSocket.accept();
-        logger.info("New client connected: " + clientSocket.getInetAddress());
-        ClientHandler handler = new ClientHandler(clientSocket);
-        executorService.submit(handler::run);
+      if (cluster != null) {
+        cluster.start();
       }
+      transport.serve();
     } catch (IOException e) {
       if (running) {
         logger.log(Level.SEVERE, "Error accepting client connection", e);
@@ -56,18 +138,35 @@ public class ChatServer {
     }
   }
 
-  private void shutdown() {
+  // 实际监听的端口，配置为 0 时由系统分配
+  int localPort() throws IOException {
+    return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+  }
+
+  void shutdown() {
+    if (!shutdownStarted.compareAndSet(false, true)) {
+      return;
+    }
     logger.info("Shutting down server...");
     running = false;
+    transport.stop();
+    metricsExporter.stop();
+    if (idleReaper != null) {
+      idleReaper.stop();
+    }
+    if (cluster != null) {
+      cluster.stop();
+    }
     for (ClientHandler handler : clients.values()) {
       handler.close();
     }
     clients.clear();
-    saveUsers();
+    userStore.close();
+    messageLog.close();
     executorService.shutdown();
     try {
-      if (!serverSocket.isClosed()) {
-        serverSocket.close();
+      if (serverChannel.isOpen()) {
+        serverChannel.close();
       }
     } catch (IOException e) {
       logger.log(Level.SEVERE, "Error closing server socket", e);
@@ -75,104 +174,273 @@ public class ChatServer {
     logger.info("Server shutdown complete");
   }
 
-  private synchronized void loadUsers() {
-    File file = new File(usersFilePath);
-    if (!file.exists()) {
-      // 初始化测试数据
-      users.clear();
-      addTestUser("1111", "1111", "1111");
-      addTestUser("2222", "2222", "2222");
-      addTestUser("3333", "3333", "3333");
-      saveUsers();
+  // 在构造函数中、开始接受连接之前调用
+  private void loadUsers() throws IOException {
+    readUsers();
+    userStore.start();
+  }
+
+  private void readUsers() {
+    if (userStore.exists()) {
+      try {
+        userStore.load();
+        return;
+      } catch (IOException e) {
+        logger.log(Level.SEVERE, "Error loading users from file", e);
+      }
+    }
+    // 初始化测试数据（文件不存在或加载失败时）
+    users.clear();
+    addTestUser("1111", "1111", "1111");
+    addTestUser("2222", "2222", "2222");
+    addTestUser("3333", "3333", "3333");
+    try {
+      userStore.writeSnapshot();
       logger.info("Initialized " + users.size() + " test users and saved to " +
                   usersFilePath);
-      return;
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Error saving users to file", e);
     }
+  }
+
+  // 在线连接发送队列上的丢弃数，抓取指标时汇总
+  private long liveConnectionDrops() {
+    long dropped = 0;
+    for (ClientHandler handler : clients.values()) {
+      dropped += handler.connection.outboundQueue().dropped();
+    }
+    return dropped;
+  }
+
+  private long historyAppendsDropped() { return messageLog.droppedAppends(); }
+
+  private void addTestUser(String username, String password, String nickname) {
+    users.put(username, new UserAccount(password, nickname));
+  }
+
+  // 发给聊天室中除 sender 以外的所有成员（sender 为 null 时发给全部成员）。
+  // 每种编码格式只编码一次，同格式的接收者共享同一个帧；只向各连接的发送队列入队，不做阻塞 I/O
+  // recent 不为 null 时消息同时放入最近消息，直接保存这次广播编码好的字节
+  private void broadcastToRoom(String room, Message message,
+                               ClientHandler sender, RecentMessages recent) {
+    BroadcastFrames frames = new BroadcastFrames(message);
+    String text = message.getText();
+    HotPathLog.log(logger, Level.INFO,
+                   () -> "Broadcasting message to " + room + ": " + text);
+    long start = System.nanoTime();
+    int recipients = 0;
     try {
-      String content = new String(Files.readAllBytes(Paths.get(usersFilePath)));
-      JsonObject json = gson.fromJson(content, JsonObject.class);
-      if (json != null) {
-        users.clear();
-        for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
-          users.put(entry.getKey(), entry.getValue().getAsJsonObject());
+      for (ClientHandler handler : rooms.members(room)) {
+        if (handler != sender) {
+          handler.sendFrame(frames.retain(handler.wireFormat));
+          recipients++;
         }
-        logger.info("Loaded " + users.size() + " users from " + usersFilePath);
       }
-    } catch (IOException e) {
-      logger.log(Level.SEVERE, "Error loading users from file", e);
-      // 加载失败时初始化测试数据
-      users.clear();
-      addTestUser("1111", "1111", "1111");
-      addTestUser("2222", "2222", "2222");
-      addTestUser("3333", "3333", "3333");
-      saveUsers();
+      if (recent != null) {
+        recent.add(message, frames);
+      }
+    } finally {
+      frames.release();
     }
+    metrics.broadcast(recipients, System.nanoTime() - start);
   }
 
-  private void addTestUser(String username, String password, String nickname) {
-    JsonObject user = new JsonObject();
-    user.addProperty("password", password);
-    user.addProperty("nickname", nickname);
-    users.put(username, user);
+  // 本节点产生的聊天室消息：发给本地成员，集群模式下再转发给其他节点。
+  // persist 为 true 的聊天消息先写日志、放入最近消息
+  private void publishToRoom(String room, Message message, ClientHandler sender,
+                             boolean persist) {
+    deliverToRoom(room, message, sender, persist);
+    if (cluster != null) {
+      cluster.publishRoom(room, message, persist);
+    }
+  }
+
+  // 写日志、放入最近消息和广播都在该聊天室最近消息的锁内完成，与加入时的回放互斥
+  private void deliverToRoom(String room, Message message, ClientHandler sender,
+                             boolean persist) {
+    withRecent(room, recent -> {
+      if (persist) {
+        record(room, message);
+      }
+      broadcastToRoom(room, message, sender, persist ? recent : null);
+    });
   }
 
-  private synchronized void saveUsers() {
-    JsonObject json = new JsonObject();
-    for (Map.Entry<String, JsonObject> entry : users.entrySet()) {
-      json.add(entry.getKey(), entry.getValue());
+  // 先写日志拿到序号，接收者可以用它作为向前翻页的起点。序号只在本节点有效，
+  // 其他节点收到转发后各自写日志、重新编号
+  private void record(String room, Message message) {
+    long sequence = messageLog.append(room, message);
+    message.setCursor(sequence > 0 ? Long.toString(sequence) : null);
+  }
+
+  // 持有聊天室最近消息的锁执行 action。广播和“加入并回放”都经过这里，同一聊天室的
+  // 实时消息一定排在回放之后，也不会既出现在回放里又实时收到一次。锁内确认它仍是
+  // 该聊天室当前的缓冲区（最后一个成员离开时会被移除），否则重试。
+  // 未开启最近消息时不加锁，action 收到 null
+  private void withRecent(String room, Consumer<RecentMessages> action) {
+    int recentSize = config.getRecentHistorySize();
+    if (recentSize <= 0) {
+      action.accept(null);
+      return;
     }
-    try (FileWriter writer = new FileWriter(usersFilePath)) {
-      gson.toJson(json, writer);
-      logger.info("Saved " + users.size() + " users to " + usersFilePath);
-    } catch (IOException e) {
-      logger.log(Level.SEVERE, "Error saving users to file", e);
+    while (true) {
+      RecentMessages recent = recentMessages.computeIfAbsent(
+          room, r -> new RecentMessages(recentSize));
+      synchronized (recent) {
+        if (recentMessages.get(room) == recent) {
+          action.accept(recent);
+          dropIfEmpty(room, recent);
+          return;
+        }
+      }
+    }
+  }
+
+  // 持有 recent 的锁时调用；大厅的最近消息一直保留
+  private void dropIfEmpty(String room, RecentMessages recent) {
+    if (!LOBBY.equals(room) && rooms.members(room).isEmpty()) {
+      recentMessages.remove(room, recent);
     }
   }
 
-  private void broadcastMessage(Message message, String senderUsername) {
-    String jsonMessage = gson.toJson(message);
-    logger.info("Broadcasting message from " + senderUsername + ": " +
-                message.getText());
-    clients.forEach((username, handler) -> {
-      if (!username.equals(senderUsername)) {
-        handler.sendRawMessage(jsonMessage);
+  // 其他节点转来的事件，在集群接收线程上调用
+  private class ClusterRelay implements ClusterHandler {
+    @Override
+    public void onRoomMessage(String room, Message message, boolean persist) {
+      deliverToRoom(room, message, null, persist);
+    }
+
+    @Override
+    public void onDirectMessage(String recipient, Message message) {
+      ClientHandler target = clients.get(recipient);
+      if (target != null && target.sendMessage(message)) {
+        metrics.directMessage();
       }
-    });
+    }
+
+    // 同一用户同时在两个节点登录成功时，两边按同一规则保留先登录的会话，后登录的被断开
+    @Override
+    public void onRemoteLogin(String username, long loginTime, String node) {
+      ClientHandler local = clients.get(username);
+      if (local != null &&
+          !ClusterNode.precedes(local.loginTime, cluster.nodeId(), loginTime,
+                                node)) {
+        local.sendMessage(Message.createResponse(
+            "error", "error", "Logged in from another server"));
+        local.close();
+      }
+    }
   }
 
-  // ClientHandler 类保持不变，以下为简洁起见省略，实际代码中保留完整实现
-  private class ClientHandler {
-    private final Socket clientSocket;
-    private PrintWriter out;
-    private BufferedReader in;
-    private String username;
+  // 会话逻辑与具体传输方式无关，读写由 Connection 完成
+  private class ClientHandler implements ConnectionHandler, IdleReaper.Target {
+    private final Connection connection;
+    // onClose 可能在回收线程、集群接收线程或广播线程上执行，登录时写入的字段需要对它可见
+    private volatile String username;
+    private volatile String nickname;
+    // 已加入的聊天室，连接关闭时据此从索引中移除
+    private final Set<String> joinedRooms = ConcurrentHashMap.newKeySet();
     private volatile boolean connected = true;
+    // 握手只允许在登录前进行，登录后不再变化，广播线程读取时不会与切换发生竞争
+    private volatile WireFormat wireFormat = WireFormat.JSON;
+    // 登录成功的时间，集群中同一用户重复登录时用来决定保留哪个会话
+    private volatile long loginTime;
+    // 未配置限额时为 null
+    private final RateLimiter rateLimiter = RateLimiter.create(config);
+    // 最后一次收到数据的时间（IdleReaper 的时钟），任何消息都算活动
+    private volatile long lastActivity;
+
+    public ClientHandler(Connection connection) {
+      this.connection = connection;
+      metrics.connectionOpened();
+    }
+
+    @Override
+    public void onOpen() {
+      if (idleReaper != null) {
+        lastActivity = idleReaper.now();
+        idleReaper.track(this);
+      }
+    }
 
-    public ClientHandler(Socket socket) { this.clientSocket = socket; }
+    private void touch() {
+      if (idleReaper != null) {
+        lastActivity = idleReaper.now();
+      }
+    }
 
-    public void run() {
+    @Override
+    public void onLine(String inputLine) {
       try {
-        out = new PrintWriter(clientSocket.getOutputStream(), true);
-        in = new BufferedReader(
-            new InputStreamReader(clientSocket.getInputStream()));
-        String inputLine;
-        while (connected && (inputLine = in.readLine()) != null) {
-          try {
-            logger.info("Received message: " + inputLine);
-            Message message = gson.fromJson(inputLine, Message.class);
-            handleMessage(message);
-          } catch (Exception e) {
-            logger.log(Level.WARNING, "Error processing message", e);
-            sendMessage(Message.createResponse("error", "error",
-                                               "Invalid message format"));
-          }
+        metrics.messageReceived();
+        touch();
+        if (!admit(inputLine.length())) {
+          return;
         }
-      } catch (IOException e) {
-        if (connected) {
-          logger.log(Level.WARNING, "Client connection error", e);
+        HotPathLog.log(logger, Level.INFO,
+                       () -> "Received message: " + inputLine);
+        Message message = MessageJsonCodec.decode(inputLine);
+        handleMessage(message);
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Error processing message", e);
+        sendMessage(
+            Message.createResponse("error", "error", "Invalid message format"));
+      }
+    }
+
+    @Override
+    public void onBinaryFrame(byte[] array, int offset, int length) {
+      try {
+        metrics.messageReceived();
+        touch();
+        // 压缩帧按解压后的大小计费，否则压缩率高的帧能绕过字节限额
+        if (!admit(BinaryCodec.decodedLength(array, offset, length))) {
+          return;
+        }
+        if (wireFormat != WireFormat.BINARY_DEFLATE &&
+            BinaryCodec.isCompressed(array, offset, length)) {
+          throw new IllegalArgumentException(
+              "Compressed frame on a connection without deflate");
         }
-      } finally {
+        HotPathLog.log(logger, Level.INFO,
+                       () -> "Received binary message: " + length + " bytes");
+        handleMessage(BinaryCodec.decode(array, offset, length,
+                                         config.getMaxLineBytes()));
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Error processing message", e);
+        sendMessage(
+            Message.createResponse("error", "error", "Invalid message format"));
+      }
+    }
+
+    // 在解码和分发之前按令牌桶限流，超限的消息不做任何处理。
+    // JSON 行按字符数计费，与字节数只在非 ASCII 内容上有差别
+    private boolean admit(int length) {
+      if (rateLimiter == null) {
+        return true;
+      }
+      switch (rateLimiter.acquire(length, System.nanoTime())) {
+      case ACCEPT:
+        return true;
+      case THROTTLE:
+        metrics.rateLimited();
+        sendMessage(Message.createResponse("error", "error",
+                                           "Rate limit exceeded"));
+        return false;
+      case DROP:
+        metrics.rateLimited();
+        return false;
+      case DISCONNECT:
+      default:
+        metrics.rateLimited();
+        metrics.rateLimitDisconnect();
+        logger.warning("Disconnecting " +
+                       (username != null ? username : "anonymous client") +
+                       " for flooding");
+        sendMessage(Message.createResponse("error", "error",
+                                           "Disconnected for flooding"));
         close();
+        return false;
       }
     }
 
@@ -183,15 +451,51 @@ public class ChatServer {
         return;
       }
       switch (message.getType()) {
+      case "hello":
+        handleHello(message);
+        break;
+      case "ping":
+        // 登录前后都可以发；text 原样带回，客户端可以用它计算往返时间
+        sendMessage(new Message("pong", null, message.getText()));
+        break;
+      case "pong":
+        break; // 收到即已记为活动
       case "register":
         handleRegister(message);
         break;
       case "login":
-        handleLogin(message);
+        long start = System.nanoTime();
+        boolean success = handleLogin(message);
+        metrics.login(success, System.nanoTime() - start);
         break;
       case "message":
         if (username != null) {
-          broadcastMessage(message, username);
+          handleChat(message);
+        } else {
+          sendMessage(
+              Message.createResponse("error", "error", "Not logged in"));
+        }
+        break;
+      case "direct":
+        if (username != null) {
+          handleDirect(message);
+        } else {
+          sendMessage(
+              Message.createResponse("error", "error", "Not logged in"));
+        }
+        break;
+      case "join":
+      case "leave":
+        if (username != null) {
+          handleRoomChange(message);
+        } else {
+          sendMessage(
+              Message.createResponse("error", "error", "Not logged in"));
+        }
+        break;
+      case "history":
+        if (username != null) {
+          handleHistory(message);
         } else {
           sendMessage(
               Message.createResponse("error", "error", "Not logged in"));
@@ -206,6 +510,31 @@ public class ChatServer {
       }
     }
 
+    // 客户端在登录前发送 hello 协商编码格式；不发送 hello 的旧客户端继续使用 JSON 行。
+    // 请求压缩协议而服务端关闭了压缩时，回复中的 message 是实际使用的 binary/1
+    private void handleHello(Message message) {
+      String protocol = message.getText();
+      if (username != null) {
+        sendMessage(Message.createResponse("hello", "error",
+                                           "Handshake must precede login"));
+      } else if (config.isBinaryProtocol() &&
+                 (BinaryCodec.PROTOCOL.equals(protocol) ||
+                  BinaryCodec.COMPRESSED_PROTOCOL.equals(protocol))) {
+        boolean compressed = config.isCompression() &&
+                             BinaryCodec.COMPRESSED_PROTOCOL.equals(protocol);
+        // 确认消息仍按 JSON 发送，之后双向切换为二进制帧
+        sendMessage(Message.createResponse(
+            "hello", "success",
+            compressed ? BinaryCodec.COMPRESSED_PROTOCOL
+                       : BinaryCodec.PROTOCOL));
+        wireFormat = compressed ? WireFormat.BINARY_DEFLATE : WireFormat.BINARY;
+        connection.switchInboundToBinary();
+      } else {
+        sendMessage(Message.createResponse("hello", "error",
+                                           "Unsupported protocol"));
+      }
+    }
+
     private void handleRegister(Message message) {
       String usernameRegister = message.getMessage();
       String password = message.getText();
@@ -215,110 +544,362 @@ public class ChatServer {
                                            "Missing registration information"));
         return;
       }
-      synchronized (users) {
-        if (users.containsKey(usernameRegister)) {
+      UserAccount account = new UserAccount(password, nickname);
+      // 先占用用户名再追加日志；落盘结果在写日志线程回调，不阻塞事件循环
+      if (!users.insert(usernameRegister, account)) {
+        sendMessage(Message.createResponse("register", "error",
+                                           "Username already exists"));
+        return;
+      }
+      userStore.append(usernameRegister, account).whenComplete((ok, e) -> {
+        if (e != null) {
+          users.remove(usernameRegister, account);
+          logger.log(Level.SEVERE, "Error saving user " + usernameRegister, e);
           sendMessage(Message.createResponse("register", "error",
-                                             "Username already exists"));
-        } else {
-          JsonObject user = new JsonObject();
-          user.addProperty("password", password);
-          user.addProperty("nickname", nickname);
-          users.put(usernameRegister, user);
-          saveUsers();
-          sendMessage(Message.createResponse("register", "success",
-                                             "Registration successful"));
-          logger.info("New user registered: " + usernameRegister);
+                                             "Registration failed"));
+          return;
         }
-      }
+        sendMessage(Message.createResponse("register", "success",
+                                           "Registration successful"));
+        logger.info("New user registered: " + usernameRegister);
+      });
     }
 
-    private void handleLogin(Message message) {
+    private boolean handleLogin(Message message) {
       String usernameLogin = message.getNickname();
       String password = message.getText();
       if (usernameLogin == null || password == null) {
         sendMessage(Message.createResponse("login", "error",
                                            "Missing login information"));
-        return;
+        return false;
       }
       if (username != null) {
         sendMessage(
             Message.createResponse("login", "error", "Already logged in"));
+        return false;
+      }
+      UserAccount account = users.lookup(usernameLogin);
+      if (account == null) {
+        sendMessage(Message.createResponse("login", "error", "User not found"));
+        return false;
+      }
+      if (!account.passwordMatches(password)) {
+        sendMessage(
+            Message.createResponse("login", "error", "Invalid password"));
+        return false;
+      }
+      // 先记下登录时间再占用用户名：onRemoteLogin 在表里看到这个会话时，
+      // 一定能用它和远端的登录比较先后
+      this.loginTime = System.currentTimeMillis();
+      // putIfAbsent 只锁住该用户名所在的桶：同名并发登录只有一个成功，不同用户互不等待
+      if (clients.putIfAbsent(usernameLogin, this) != null) {
+        sendMessage(Message.createResponse("login", "error",
+                                           "User already logged in"));
+        return false;
+      }
+      // 集群中在线用户表是异步同步的；两个节点几乎同时登录时由 onRemoteLogin 断开后到的一方
+      if (cluster != null && cluster.onlineElsewhere(usernameLogin)) {
+        clients.remove(usernameLogin, this);
+        sendMessage(Message.createResponse("login", "error",
+                                           "User already logged in"));
+        return false;
+      }
+      if (cluster != null) {
+        cluster.publishLogin(usernameLogin, loginTime);
+      }
+      this.nickname = account.nickname();
+      this.username = usernameLogin;
+      Message loginSuccess =
+          Message.createResponse("login", "success", "Login successful");
+      loginSuccess.setNickname(account.nickname());
+      joinedRooms.add(LOBBY);
+      joinRoom(LOBBY, loginSuccess);
+      if (!connected) {
+        // onClose 在占用用户名之后、写入 username 之前执行时看不到这次登录，
+        // 由这里撤销；两边都撤销也没有关系
+        leaveRoom(LOBBY);
+        clients.remove(usernameLogin, this);
+        if (cluster != null) {
+          cluster.publishLogout(usernameLogin);
+        }
+        return false;
+      }
+      HotPathLog.log(logger, Level.INFO,
+                     () -> "User logged in: " + usernameLogin);
+      Message userJoinedMessage =
+          new Message("system", null, account.nickname() + " joined the chat");
+      publishToRoom(LOBBY, userJoinedMessage, this, false);
+      return true;
+    }
+
+    // 只有聊天室成员可以发言，消息原样转发给该聊天室的其他成员。
+    // 发送者自己收不到广播，另外回一条带序号和原文的确认，客户端翻页去重要用到
+    private void handleChat(Message message) {
+      String room = message.getRoom() != null ? message.getRoom() : LOBBY;
+      if (!joinedRooms.contains(room)) {
+        sendMessage(roomResponse("error", "error", "Not in room", room));
         return;
       }
-      synchronized (users) {
-        if (clients.containsKey(usernameLogin)) {
-          sendMessage(Message.createResponse("login", "error",
-                                             "User already logged in"));
-        } else if (users.containsKey(usernameLogin)) {
-          JsonObject user = users.get(usernameLogin);
-          if (password.equals(user.get("password").getAsString())) {
-            this.username = usernameLogin;
-            clients.put(usernameLogin, this);
-            Message loginSuccess =
-                Message.createResponse("login", "success", "Login successful");
-            loginSuccess.setNickname(user.get("nickname").getAsString());
-            sendMessage(loginSuccess);
-            logger.info("User logged in: " + usernameLogin);
-            Message userJoinedMessage = new Message(
-                "system", null,
-                user.get("nickname").getAsString() + " joined the chat");
-            broadcastMessage(userJoinedMessage, usernameLogin);
-          } else {
-            sendMessage(
-                Message.createResponse("login", "error", "Invalid password"));
-          }
-        } else {
-          sendMessage(
-              Message.createResponse("login", "error", "User not found"));
+      publishToRoom(room, message, this, true);
+      if (message.getCursor() != null) {
+        Message ack = roomResponse("message", "success", null, room);
+        ack.setText(message.getText());
+        ack.setCursor(message.getCursor());
+        sendMessage(ack);
+      }
+    }
+
+    // 向前翻页读取聊天室历史：cursor 为已看到的最早一条的序号（为空表示从最新的开始），
+    // text 为每页条数。按时间顺序逐条回复 history 消息（message 字段为写入时间的毫秒数），
+    // 最后一条带 status 的 history 响应表示本页结束，它的 cursor 是下一页的起点，
+    // 为空表示没有更早的消息了
+    private void handleHistory(Message request) {
+      String room = request.getRoom() != null ? request.getRoom() : LOBBY;
+      if (!joinedRooms.contains(room)) {
+        sendMessage(roomResponse("history", "error", "Not in room", room));
+        return;
+      }
+      long before;
+      int pageSize;
+      try {
+        before = request.getCursor() != null
+                     ? Long.parseLong(request.getCursor())
+                     : Long.MAX_VALUE;
+        pageSize = request.getText() != null
+                       ? Integer.parseInt(request.getText())
+                       : HISTORY_PAGE_SIZE;
+      } catch (NumberFormatException e) {
+        sendMessage(roomResponse("history", "error",
+                                 "Invalid cursor or page size", room));
+        return;
+      }
+      int limit = Math.max(1, Math.min(pageSize, MAX_HISTORY_PAGE_SIZE));
+      // 读盘放到工作线程，不占用 I/O 线程
+      executorService.execute(() -> sendHistoryPage(room, before, limit));
+    }
+
+    private void sendHistoryPage(String room, long before, int limit) {
+      List<LoggedMessage> page;
+      try {
+        page = messageLog.readRoom(room, before, limit);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Error reading history of " + room, e);
+        sendMessage(
+            roomResponse("history", "error", "History unavailable", room));
+        return;
+      }
+      for (LoggedMessage record : page) {
+        Message stored = record.message();
+        Message item =
+            new Message("history", stored.getNickname(), stored.getText());
+        item.setRoom(room);
+        item.setCursor(Long.toString(record.sequence()));
+        item.setMessage(Long.toString(record.timestamp()));
+        sendMessage(item);
+      }
+      Message end = roomResponse("history", "success",
+                                 page.size() + " messages", room);
+      if (!page.isEmpty() && page.get(0).previousInRoom() > 0) {
+        end.setCursor(Long.toString(page.get(0).sequence()));
+      }
+      sendMessage(end);
+    }
+
+    // 发送确认响应、成为成员和回放最近消息作为一步完成：实时消息排在确认和回放之后，
+    // 回放中的消息也不会再实时收到一次
+    private void joinRoom(String room, Message response) {
+      withRecent(room, recent -> {
+        sendMessage(response);
+        rooms.join(room, this);
+        if (recent != null) {
+          recent.replay(wireFormat, this::sendFrame);
+        }
+      });
+    }
+
+    private void leaveRoom(String room) {
+      rooms.leave(room, this);
+      RecentMessages recent = recentMessages.get(room);
+      if (recent != null) {
+        // 在它的锁内重新检查：加入者持有同一把锁，不会丢掉刚加入的成员要用的消息
+        synchronized (recent) {
+          dropIfEmpty(room, recent);
         }
       }
     }
 
-    public void sendMessage(Message message) {
-      sendRawMessage(gson.toJson(message));
+    // 私聊只查一次在线表，直接放进接收者的发送队列，不经过任何聊天室。
+    // 回执表示消息已进入对方的发送队列；接收者在其他节点上时表示已交给集群链路
+    private void handleDirect(Message message) {
+      String recipient = message.getMessage();
+      if (recipient == null || message.getText() == null) {
+        sendMessage(Message.createResponse("direct", "error",
+                                           "Missing recipient or text"));
+        return;
+      }
+      ClientHandler target = clients.get(recipient);
+      Message outgoing = new Message("direct", nickname, message.getText());
+      outgoing.setMessage(username); // 接收方据此回复
+      if (target == null && cluster != null &&
+          cluster.onlineElsewhere(recipient)) {
+        cluster.publishDirect(recipient, outgoing);
+        sendMessage(Message.createResponse("direct", "success",
+                                           "Delivered to " + recipient));
+        return;
+      }
+      if (target == null) {
+        String reason =
+            users.lookup(recipient) == null ? "User not found" : "User offline";
+        sendMessage(Message.createResponse("direct", "error", reason));
+        return;
+      }
+      if (!target.sendMessage(outgoing)) {
+        sendMessage(Message.createResponse("direct", "error", "User offline"));
+        return;
+      }
+      metrics.directMessage();
+      sendMessage(Message.createResponse("direct", "success",
+                                         "Delivered to " + recipient));
     }
 
-    public void sendRawMessage(String rawMessage) {
-      if (connected && out != null) {
-        out.println(rawMessage);
-        if (out.checkError()) {
-          logger.warning("Error sending message to client");
-          close();
+    private void handleRoomChange(Message message) {
+      String type = message.getType();
+      String room = message.getRoom();
+      if (room == null || room.isBlank() ||
+          room.length() > MAX_ROOM_NAME_LENGTH) {
+        sendMessage(roomResponse(type, "error", "Invalid room name", room));
+        return;
+      }
+      if ("join".equals(type)) {
+        if (!joinedRooms.add(room)) {
+          sendMessage(roomResponse(type, "error", "Already in room", room));
+          return;
+        }
+        joinRoom(room, roomResponse(type, "success", "Joined " + room, room));
+        if (!connected) {
+          // 与 onClose 并发时由这里撤销，避免在索引里留下已关闭的连接
+          leaveRoom(room);
+          return;
         }
+        publishToRoom(room, roomNotice(nickname + " joined the room", room),
+                      this, false);
+      } else {
+        if (LOBBY.equals(room)) {
+          sendMessage(
+              roomResponse(type, "error", "Cannot leave the lobby", room));
+          return;
+        }
+        if (!joinedRooms.remove(room)) {
+          sendMessage(roomResponse(type, "error", "Not in room", room));
+          return;
+        }
+        leaveRoom(room);
+        sendMessage(roomResponse(type, "success", "Left " + room, room));
+        publishToRoom(room, roomNotice(nickname + " left the room", room),
+                      this, false);
       }
     }
 
-    public void close() {
+    private Message roomResponse(String type, String status, String text,
+                                 String room) {
+      Message response = Message.createResponse(type, status, text);
+      response.setRoom(room);
+      return response;
+    }
+
+    private Message roomNotice(String text, String room) {
+      Message notice = new Message("system", null, text);
+      notice.setRoom(room);
+      return notice;
+    }
+
+    // 返回 false 表示连接已关闭，消息没有入队
+    public boolean sendMessage(Message message) {
+      if (!connected) {
+        return false;
+      }
+      connection.send(wireFormat.encode(message));
+      metrics.frameSent();
+      return true;
+    }
+
+    public void sendFrame(Frame frame) {
+      if (connected) {
+        connection.send(frame);
+        metrics.frameSent();
+      } else {
+        frame.release();
+      }
+    }
+
+    public void close() { connection.close(); }
+
+    @Override
+    public long lastActivity() { return lastActivity; }
+
+    @Override
+    public boolean isOpen() { return connected; }
+
+    @Override
+    public void ping() { sendMessage(new Message("ping", null, null)); }
+
+    // 半开的连接读不到 EOF，只能由这里关闭，onClose 随后把用户移出在线表
+    @Override
+    public void closeIdle() {
+      String who = username != null ? username : "anonymous client";
+      HotPathLog.log(logger, Level.INFO,
+                     () -> "Closing idle connection of " + who);
+      close();
+    }
+
+    @Override
+    public Frame skippedNotice(int skipped) {
+      Message notice = new Message(
+          "system", null,
+          skipped +
+              " messages were skipped because your connection is too slow");
+      return wireFormat.encode(notice);
+    }
+
+    @Override
+    public void onWrite(int framesCompleted) {
+      metrics.socketWrite(framesCompleted);
+    }
+
+    @Override
+    public void onClose() {
       if (!connected)
         return;
       connected = false;
+      metrics.connectionClosed(connection.outboundQueue().dropped());
       if (username != null) {
-        clients.remove(username);
-        JsonObject user = users.get(username);
-        if (user != null) {
-          String nickname = user.get("nickname").getAsString();
-          Message userLeftMessage =
-              new Message("system", null, nickname + " left the chat");
-          broadcastMessage(userLeftMessage, username);
+        clients.remove(username, this);
+        for (String room : joinedRooms) {
+          leaveRoom(room);
+          if (LOBBY.equals(room)) {
+            Message userLeftMessage =
+                new Message("system", null, nickname + " left the chat");
+            publishToRoom(LOBBY, userLeftMessage, this, false);
+          } else {
+            publishToRoom(room, roomNotice(nickname + " left the room", room),
+                          this, false);
+          }
+        }
+        joinedRooms.clear();
+        if (cluster != null) {
+          cluster.publishLogout(username);
         }
-        logger.info("User disconnected: " + username);
+        String disconnected = username;
+        HotPathLog.log(logger, Level.INFO,
+                       () -> "User disconnected: " + disconnected);
         username = null;
       }
-      try {
-        if (out != null)
-          out.close();
-        if (in != null)
-          in.close();
-        clientSocket.close();
-      } catch (IOException e) {
-        logger.log(Level.WARNING, "Error closing client resources", e);
-      }
     }
   }
 
   public static void main(String[] args) {
     try {
-      ChatServer server = new ChatServer();
+      ChatServer server = new ChatServer(ServerConfig.fromArgs(args));
       server.startServer();
     } catch (IOException e) {
       logger.log(Level.SEVERE, "Server startup error", e);
@@ -0,0 +1,15 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+
+// 集群回调：其他节点产生的事件去重后在接收线程上调用一次，实现不得阻塞
+interface ClusterHandler {
+  // persist 为 true 的是聊天消息，需要写入本节点的消息日志；系统提示只转发
+  void onRoomMessage(String room, Message message, boolean persist);
+
+  // 事件会到达每个节点，只有接收者在线的节点需要投递
+  void onDirectMessage(String recipient, Message message);
+
+  // 用户在 node 上登录；本地也在线时用 ClusterNode.precedes 决定保留哪一个会话
+  void onRemoteLogin(String username, long loginTime, String node);
+}
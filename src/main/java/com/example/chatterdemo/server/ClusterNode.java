@@ -0,0 +1,702 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.MessageJsonCodec;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// 节点之间的转发链路，每行一个 JSON 事件。每个节点主动连接 clusterPeers 中的节点，
+// 只在自己发起的连接上发送、只在对方发起的连接上接收，两个节点之间每个方向恰好一条连接。
+// 事件带（来源节点、启动时间、序号），收到后先去重再交给本节点处理。maxHops > 0 时
+// 还会转发给其余出站连接，非全互联的拓扑也能送达：环路上的重复副本由去重丢弃，
+// 跳数上限兜底。链路断开期间的事件不补发，重连后先发送本节点在线用户的快照。
+// 建立链路时双方各出一个随机数，用共享口令对随机数做 HMAC 互相证明身份，口令本身不上线路；
+// 之后的事件不加密也不签名，节点之间的网络仍应是可信的
+final class ClusterNode {
+  private static final Logger logger =
+      Logger.getLogger(ClusterNode.class.getName());
+  private static final String ROOM = "room";
+  private static final String DIRECT = "direct";
+  private static final String LOGIN = "login";
+  private static final String LOGOUT = "logout";
+  private static final int QUEUE_CAPACITY = 65536;
+  private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+  private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+  // 出站链路空闲时发送空行，对端重启后下一次写出就能发现连接已失效
+  private static final long KEEPALIVE_MILLIS = 1000;
+  private static final long MIN_RETRY_MILLIS = 200;
+  private static final long MAX_RETRY_MILLIS = 10_000;
+
+  private final String nodeId;
+  // 本次启动的时间，和序号一起标识事件；节点重启后序号从头开始，旧的去重状态随之作废
+  private final long epoch = System.currentTimeMillis();
+  private final int listenPort;
+  private final SecretKeySpec secretKey;
+  private final SecureRandom random = new SecureRandom();
+  private final int maxHops;
+  private final ClusterHandler handler;
+  private final List<Outbound> outbound = new ArrayList<>();
+  // 接收线程和各出站线程；入站线程在关闭套接字后自行退出
+  private final List<Thread> threads = new ArrayList<>();
+  private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+  private final Map<String, SeenWindow> seen = new ConcurrentHashMap<>();
+  // 本节点在线的用户 -> 登录时间，链路建立时作为快照发送
+  private final Map<String, Long> localUsers = new ConcurrentHashMap<>();
+  // 其他节点上在线的用户；同一用户在多个节点登录时只保留先登录的一方
+  private final Map<String, RemoteUser> remoteUsers =
+      new ConcurrentHashMap<>();
+  private long sequence; // 由 this 保护
+  private ServerSocket serverSocket;
+  private volatile boolean running = true;
+
+  private record RemoteUser(String node, long epoch, long loginTime) {}
+
+  // 握手的三行都用它表示：连接方 node/epoch/nonce，接收方再加 proof，最后连接方只发 proof
+  private record Hello(String node, long epoch, String nonce, String proof) {}
+
+  private record Event(String node, long epoch, long seq, int hops,
+                       String kind, String room, String user, long time,
+                       boolean persist, Message message) {}
+
+  // secret 不能为空：集群端口监听所有网卡，没有口令任何主机都能注入事件
+  ClusterNode(String nodeId, int listenPort, List<InetSocketAddress> peers,
+              String secret, int maxHops, ClusterHandler handler) {
+    if (secret == null || secret.isEmpty()) {
+      throw new IllegalArgumentException(
+          "clusterSecret is required when clustering is enabled");
+    }
+    this.nodeId = nodeId;
+    this.listenPort = listenPort;
+    this.secretKey = new SecretKeySpec(
+        secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    this.maxHops = maxHops;
+    this.handler = handler;
+    for (InetSocketAddress peer : peers) {
+      outbound.add(new Outbound(peer));
+    }
+  }
+
+  // 解析 host:port,host:port 形式的节点列表
+  static List<InetSocketAddress> parsePeers(String list) {
+    List<InetSocketAddress> peers = new ArrayList<>();
+    if (list == null) {
+      return peers;
+    }
+    for (String peer : list.split(",")) {
+      peer = peer.trim();
+      if (peer.isEmpty()) {
+        continue;
+      }
+      int colon = peer.lastIndexOf(':');
+      if (colon <= 0) {
+        throw new IllegalArgumentException("Invalid cluster peer: " + peer);
+      }
+      peers.add(InetSocketAddress.createUnresolved(
+          peer.substring(0, colon),
+          Integer.parseInt(peer.substring(colon + 1))));
+    }
+    return peers;
+  }
+
+  // 同一用户在两个节点上登录时，各节点按同一规则得出同一个胜者：
+  // 登录时间早的优先，相同时比较节点名
+  static boolean precedes(long timeA, String nodeA, long timeB, String nodeB) {
+    return timeA != timeB ? timeA < timeB : nodeA.compareTo(nodeB) < 0;
+  }
+
+  String nodeId() { return nodeId; }
+
+  void start() throws IOException {
+    if (listenPort > 0) {
+      serverSocket = new ServerSocket(listenPort);
+      threads.add(startThread("cluster-accept", this::acceptLoop));
+    }
+    for (Outbound link : outbound) {
+      threads.add(startThread("cluster-out-" + link.address, link::run));
+    }
+    logger.info("Cluster node " + nodeId + " listening on port " +
+                listenPort + ", peers " + outbound.size());
+  }
+
+  void stop() {
+    running = false;
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error closing cluster socket", e);
+    }
+    for (Socket socket : inbound) {
+      closeQuietly(socket);
+    }
+    for (Outbound link : outbound) {
+      closeQuietly(link.socket);
+    }
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+  }
+
+  private static Thread startThread(String name, Runnable task) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  boolean onlineElsewhere(String username) {
+    return remoteUsers.containsKey(username);
+  }
+
+  void publishRoom(String room, Message message, boolean persist) {
+    publish(ROOM, room, null, 0, persist, message);
+  }
+
+  void publishDirect(String recipient, Message message) {
+    publish(DIRECT, null, recipient, 0, false, message);
+  }
+
+  synchronized void publishLogin(String username, long loginTime) {
+    localUsers.put(username, loginTime);
+    publish(LOGIN, null, username, loginTime, false, null);
+  }
+
+  synchronized void publishLogout(String username) {
+    localUsers.remove(username);
+    publish(LOGOUT, null, username, 0, false, null);
+  }
+
+  // 持锁编号并入队，每条出站链路上的事件顺序与序号一致，快照也不会和登录登出交错
+  private synchronized void publish(String kind, String room, String user,
+                                    long time, boolean persist,
+                                    Message message) {
+    String line = encode(new Event(nodeId, epoch, ++sequence, 0, kind, room,
+                                   user, time, persist, message));
+    for (Outbound link : outbound) {
+      link.offer(line);
+    }
+  }
+
+  private synchronized void linkUp(Outbound link) {
+    link.queue.clear();
+    link.connected = true;
+    for (Map.Entry<String, Long> user : localUsers.entrySet()) {
+      link.offer(encode(new Event(nodeId, epoch, ++sequence, 0, LOGIN, null,
+                                  user.getKey(), user.getValue(), false,
+                                  null)));
+    }
+  }
+
+  private void acceptLoop() {
+    while (running) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        if (running) {
+          logger.log(Level.WARNING, "Error accepting cluster link", e);
+        }
+        return;
+      }
+      startThread("cluster-in-" + socket.getRemoteSocketAddress(),
+                  () -> serveInbound(socket));
+    }
+  }
+
+  private void serveInbound(Socket socket) {
+    inbound.add(socket);
+    Hello hello = null;
+    try (socket) {
+      socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      Writer writer = new BufferedWriter(new OutputStreamWriter(
+          socket.getOutputStream(), StandardCharsets.UTF_8));
+      Hello request = readHello(reader.readLine());
+      if (request == null || request.node() == null ||
+          request.nonce() == null) {
+        logger.warning("Rejected cluster link from " +
+                       socket.getRemoteSocketAddress());
+        return;
+      }
+      String nonce = newNonce();
+      writeHello(writer, nonce,
+                 proof("accept", request.nonce(), nonce, nodeId));
+      if (nodeId.equals(request.node())) {
+        return; // 配置里把自己列成了节点，对方读到回复后不再重连
+      }
+      Hello confirm = readHello(reader.readLine());
+      if (confirm == null ||
+          !proofMatches(confirm.proof(), "dial", nonce, request.nonce(),
+                        request.node())) {
+        logger.warning("Rejected cluster link from " +
+                       socket.getRemoteSocketAddress() +
+                       ": wrong cluster secret");
+        return;
+      }
+      hello = request;
+      socket.setSoTimeout(0);
+      logger.info("Cluster link from " + hello.node() + " established");
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          receive(line, hello.node());
+        }
+      }
+    } catch (IOException e) {
+      if (running) {
+        logger.log(Level.WARNING, "Cluster link from " +
+                   socket.getRemoteSocketAddress() + " failed", e);
+      }
+    } finally {
+      inbound.remove(socket);
+      if (hello != null) {
+        forget(hello.node(), hello.epoch());
+        logger.info("Cluster link from " + hello.node() + " closed");
+      }
+    }
+  }
+
+  private void receive(String line, String from) {
+    Event event;
+    try {
+      event = decode(line);
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Skipping malformed cluster event from " + from,
+                 e);
+      return;
+    }
+    if (nodeId.equals(event.node()) ||
+        !seen.computeIfAbsent(event.node(), n -> new SeenWindow())
+             .firstSeen(event.epoch(), event.seq())) {
+      return;
+    }
+    if (event.hops() < maxHops) {
+      forward(event, from);
+    }
+    try {
+      deliver(event);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Error handling cluster event from " +
+                 event.node(), e);
+    }
+  }
+
+  private synchronized void forward(Event event, String from) {
+    String line = null;
+    for (Outbound link : outbound) {
+      String peer = link.peer;
+      if (link.connected && !event.node().equals(peer) && !from.equals(peer)) {
+        if (line == null) {
+          line = encode(new Event(event.node(), event.epoch(), event.seq(),
+                                  event.hops() + 1, event.kind(), event.room(),
+                                  event.user(), event.time(), event.persist(),
+                                  event.message()));
+        }
+        link.offer(line);
+      }
+    }
+  }
+
+  private void deliver(Event event) {
+    switch (event.kind()) {
+    case ROOM:
+      handler.onRoomMessage(event.room(), event.message(), event.persist());
+      break;
+    case DIRECT:
+      handler.onDirectMessage(event.user(), event.message());
+      break;
+    case LOGIN:
+      remoteUsers.merge(
+          event.user(),
+          new RemoteUser(event.node(), event.epoch(), event.time()),
+          (current, claim)
+              -> precedes(current.loginTime(), current.node(),
+                          claim.loginTime(), claim.node())
+                     ? current
+                     : claim);
+      handler.onRemoteLogin(event.user(), event.time(), event.node());
+      break;
+    case LOGOUT:
+      remoteUsers.computeIfPresent(
+          event.user(),
+          (user, current) -> current.node().equals(event.node()) ? null
+                                                                 : current);
+      break;
+    default:
+      logger.fine("Ignoring cluster event " + event.kind());
+    }
+  }
+
+  // 来自某节点的入站链路断开，视为该节点上的用户全部离线。只清除同一次启动登记的用户，
+  // 节点重启后新链路先建立时不会误删新快照
+  private void forget(String node, long nodeEpoch) {
+    remoteUsers.values().removeIf(
+        user -> user.node().equals(node) && user.epoch() == nodeEpoch);
+  }
+
+  private String newNonce() {
+    byte[] nonce = new byte[16];
+    random.nextBytes(nonce);
+    return Base64.getEncoder().encodeToString(nonce);
+  }
+
+  // role 区分两个方向的证明，避免把对方的证明原样发回去
+  private String proof(String role, String theirNonce, String ourNonce,
+                       String node) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(secretKey);
+      byte[] digest = mac.doFinal(
+          (role + '\n' + theirNonce + '\n' + ourNonce + '\n' + node)
+              .getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HmacSHA256 unavailable", e);
+    }
+  }
+
+  private boolean proofMatches(String candidate, String role,
+                               String theirNonce, String ourNonce,
+                               String node) {
+    return candidate != null &&
+        MessageDigest.isEqual(
+            proof(role, theirNonce, ourNonce, node)
+                .getBytes(StandardCharsets.UTF_8),
+            candidate.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // nonce 和 proof 为 null 时不写
+  private void writeHello(Writer writer, String nonce, String proof)
+      throws IOException {
+    StringWriter out = new StringWriter();
+    try (JsonWriter json = new JsonWriter(out)) {
+      json.beginObject();
+      json.name("node").value(nodeId);
+      json.name("epoch").value(epoch);
+      if (nonce != null) {
+        json.name("nonce").value(nonce);
+      }
+      if (proof != null) {
+        json.name("proof").value(proof);
+      }
+      json.endObject();
+    }
+    writer.write(out.toString());
+    writer.write('\n');
+    writer.flush();
+  }
+
+  private static Hello readHello(String line) throws IOException {
+    if (line == null) {
+      return null;
+    }
+    String node = null;
+    long epoch = 0;
+    String nonce = null;
+    String proof = null;
+    try (JsonReader json = new JsonReader(new StringReader(line))) {
+      json.beginObject();
+      while (json.hasNext()) {
+        switch (json.nextName()) {
+        case "node":
+          node = json.nextString();
+          break;
+        case "epoch":
+          epoch = json.nextLong();
+          break;
+        case "nonce":
+          nonce = json.nextString();
+          break;
+        case "proof":
+          proof = json.nextString();
+          break;
+        default:
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new IOException("Invalid cluster handshake", e);
+    }
+    return new Hello(node, epoch, nonce, proof);
+  }
+
+  private static String encode(Event event) {
+    StringWriter out = new StringWriter();
+    try (JsonWriter json = new JsonWriter(out)) {
+      json.beginObject();
+      json.name("node").value(event.node());
+      json.name("epoch").value(event.epoch());
+      json.name("seq").value(event.seq());
+      json.name("hops").value(event.hops());
+      json.name("kind").value(event.kind());
+      if (event.room() != null) {
+        json.name("room").value(event.room());
+      }
+      if (event.user() != null) {
+        json.name("user").value(event.user());
+      }
+      if (event.time() != 0) {
+        json.name("time").value(event.time());
+      }
+      if (event.persist()) {
+        json.name("persist").value(true);
+      }
+      if (event.message() != null) {
+        json.name("message").value(MessageJsonCodec.encode(event.message()));
+      }
+      json.endObject();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // StringWriter 不会抛出
+    }
+    return out.toString();
+  }
+
+  private static Event decode(String line) throws IOException {
+    String node = null;
+    long epoch = 0;
+    long seq = 0;
+    int hops = 0;
+    String kind = null;
+    String room = null;
+    String user = null;
+    long time = 0;
+    boolean persist = false;
+    Message message = null;
+    try (JsonReader json = new JsonReader(new StringReader(line))) {
+      json.beginObject();
+      while (json.hasNext()) {
+        switch (json.nextName()) {
+        case "node":
+          node = json.nextString();
+          break;
+        case "epoch":
+          epoch = json.nextLong();
+          break;
+        case "seq":
+          seq = json.nextLong();
+          break;
+        case "hops":
+          hops = json.nextInt();
+          break;
+        case "kind":
+          kind = json.nextString();
+          break;
+        case "room":
+          room = json.nextString();
+          break;
+        case "user":
+          user = json.nextString();
+          break;
+        case "time":
+          time = json.nextLong();
+          break;
+        case "persist":
+          persist = json.nextBoolean();
+          break;
+        case "message":
+          message = MessageJsonCodec.decode(json.nextString());
+          break;
+        default:
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+    if (node == null || kind == null) {
+      throw new IOException("Incomplete cluster event");
+    }
+    return new Event(node, epoch, seq, hops, kind, room, user, time, persist,
+                     message);
+  }
+
+  private static void closeQuietly(Socket socket) {
+    if (socket == null) {
+      return;
+    }
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // 关闭时的异常没有可处理的
+    }
+  }
+
+  // 每个来源节点最近 WINDOW 个序号的位图。泛洪时同一事件可能先后从多条路径到达，
+  // 顺序也不一定；比窗口更早的序号一律当作已处理
+  private static final class SeenWindow {
+    private static final int WINDOW = 1024;
+    private final long[] bits = new long[WINDOW / 64];
+    private long epoch;
+    private long highest;
+
+    synchronized boolean firstSeen(long eventEpoch, long seq) {
+      if (eventEpoch < epoch) {
+        return false; // 来源节点重启前的事件
+      }
+      if (eventEpoch > epoch) {
+        epoch = eventEpoch;
+        highest = 0;
+        Arrays.fill(bits, 0);
+      }
+      if (seq > highest) {
+        if (seq - highest >= WINDOW) {
+          Arrays.fill(bits, 0);
+        } else {
+          for (long s = highest + 1; s < seq; s++) {
+            clear(s);
+          }
+        }
+        highest = seq;
+        set(seq);
+        return true;
+      }
+      if (highest - seq >= WINDOW || isSet(seq)) {
+        return false;
+      }
+      set(seq);
+      return true;
+    }
+
+    private void set(long seq) {
+      int slot = (int) (seq % WINDOW);
+      bits[slot >>> 6] |= 1L << slot;
+    }
+
+    private void clear(long seq) {
+      int slot = (int) (seq % WINDOW);
+      bits[slot >>> 6] &= ~(1L << slot);
+    }
+
+    private boolean isSet(long seq) {
+      int slot = (int) (seq % WINDOW);
+      return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+  }
+
+  // 主动连接一个节点并发送本节点的事件，断开后按指数退避重连
+  private final class Outbound {
+    final InetSocketAddress address;
+    final BlockingQueue<String> queue =
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // 握手后得知的对端节点名，转发时不发回来源节点
+    volatile String peer;
+    volatile boolean connected;
+    volatile Socket socket;
+    private long dropped; // 由 ClusterNode.this 保护
+
+    Outbound(InetSocketAddress address) { this.address = address; }
+
+    // 调用方持有 ClusterNode.this 的锁；对端太慢时丢弃新事件而不是阻塞广播线程
+    void offer(String line) {
+      if (connected && !queue.offer(line) && dropped++ % 1000 == 0) {
+        logger.warning("Cluster link to " + address +
+                       " is backed up, dropping events");
+      }
+    }
+
+    void run() {
+      long retryMillis = MIN_RETRY_MILLIS;
+      boolean warned = false;
+      while (running) {
+        try (Socket s = new Socket()) {
+          socket = s;
+          s.connect(new InetSocketAddress(address.getHostString(),
+                                          address.getPort()),
+                    CONNECT_TIMEOUT_MILLIS);
+          s.setTcpNoDelay(true);
+          s.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+          BufferedReader reader = new BufferedReader(new InputStreamReader(
+              s.getInputStream(), StandardCharsets.UTF_8));
+          Writer writer = new BufferedWriter(new OutputStreamWriter(
+              s.getOutputStream(), StandardCharsets.UTF_8));
+          String nonce = newNonce();
+          writeHello(writer, nonce, null);
+          Hello reply = readHello(reader.readLine());
+          if (reply == null || reply.node() == null || reply.nonce() == null) {
+            throw new IOException("Cluster handshake rejected");
+          }
+          if (!proofMatches(reply.proof(), "accept", nonce, reply.nonce(),
+                            reply.node())) {
+            throw new IOException("Cluster peer " + address +
+                                  " has a different cluster secret");
+          }
+          if (nodeId.equals(reply.node())) {
+            logger.warning("Cluster peer " + address + " is this node");
+            return;
+          }
+          writeHello(writer, null,
+                     proof("dial", reply.nonce(), nonce, nodeId));
+          peer = reply.node();
+          linkUp(this);
+          retryMillis = MIN_RETRY_MILLIS;
+          warned = false;
+          logger.info("Cluster link to " + peer + " established");
+          pump(writer);
+        } catch (IOException e) {
+          if (running && (connected || !warned)) {
+            logger.log(Level.WARNING, "Cluster link to " + address +
+                       " unavailable, retrying", e);
+            warned = true;
+          }
+        } catch (InterruptedException e) {
+          return;
+        } finally {
+          connected = false;
+          socket = null;
+        }
+        try {
+          Thread.sleep(retryMillis);
+        } catch (InterruptedException e) {
+          return;
+        }
+        retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+      }
+    }
+
+    private void pump(Writer writer)
+        throws IOException, InterruptedException {
+      while (running) {
+        String line = queue.poll(KEEPALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        if (line != null) {
+          writer.write(line);
+        }
+        writer.write('\n');
+        if (queue.isEmpty()) {
+          writer.flush();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.example.chatterdemo.server;
+
+// 传输层连接抽象：NIO 与阻塞模式共用同一套 ClientHandler 逻辑
+interface Connection {
+  // 把一帧放入发送队列，不在调用线程上做 I/O。调用方把帧的一个引用交给连接
+  void send(Frame frame);
+
+  // 关闭连接，重复调用无副作用；关闭后会回调一次 ConnectionHandler.onClose
+  void close();
+
+  // 只能在 ConnectionHandler.onLine 回调中调用：之后的入站数据按二进制帧解析
+  void switchInboundToBinary();
+
+  String remoteAddress();
+
+  OutboundQueue outboundQueue();
+}
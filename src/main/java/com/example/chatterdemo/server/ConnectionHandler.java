@@ -0,0 +1,22 @@
+package com.example.chatterdemo.server;
+
+// 传输层回调：连接构造完成、开始读取前调用一次 onOpen，每收到一行完整的 JSON 调用一次
+// onLine，二进制协议下每帧调用一次 onBinaryFrame，连接关闭时调用一次 onClose，每次向套接字
+// 写出（一次系统调用）后调用 onWrite
+interface ConnectionHandler {
+  // 处理器在连接的构造函数中创建，需要把连接交给其他线程的操作放在这里
+  void onOpen();
+
+  void onLine(String line);
+
+  // array 可能是共用的读缓冲区，回调返回后不得再引用
+  void onBinaryFrame(byte[] array, int offset, int length);
+
+  void onClose();
+
+  // framesCompleted 为这次写出后完整发送的帧数，可能为 0（只写出了一部分）
+  void onWrite(int framesCompleted);
+
+  // 发送队列按 COALESCE 策略合并积压时，用当前连接的编码格式生成提示帧
+  Frame skippedNotice(int skipped);
+}
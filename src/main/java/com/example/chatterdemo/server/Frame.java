@@ -0,0 +1,114 @@
+package com.example.chatterdemo.server;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 编码一次、所有接收者共享的不可变消息帧。每个持有者（发送队列、正在写的批次）
+// 各占一个引用，引用归零后小帧使用的直接内存块会回到池中复用。
+// 直接内存可以被 SocketChannel 直接写出，省去 JDK 内部再拷贝到临时直接缓冲区的一步
+final class Frame {
+  private static final int SLAB_SIZE = 8 * 1024;
+  private static final int MAX_POOLED_SLABS = 1024;
+  private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger pooledSlabs = new AtomicInteger();
+  private static final ThreadLocal<CharsetEncoder> encoders =
+      ThreadLocal.withInitial(
+          ()
+              -> StandardCharsets.UTF_8.newEncoder()
+                     .onMalformedInput(CodingErrorAction.REPLACE)
+                     .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+  private final ByteBuffer data;
+  private final boolean pooled;
+  private final AtomicInteger refCnt = new AtomicInteger(1);
+
+  private Frame(ByteBuffer data, boolean pooled) {
+    this.data = data;
+    this.pooled = pooled;
+  }
+
+  // 把一行文本编码为 UTF-8 并追加换行符，返回的帧持有一个引用
+  static Frame encode(String line) {
+    // UTF-8 每个 char 最多 3 个字节，能放进内存块的直接编码进去
+    if (line.length() * 3 + 1 > SLAB_SIZE) {
+      byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+      return new Frame(ByteBuffer.wrap(bytes), false);
+    }
+    ByteBuffer slab = acquireSlab();
+    CharsetEncoder encoder = encoders.get().reset();
+    CoderResult result = encoder.encode(CharBuffer.wrap(line), slab, true);
+    if (result.isUnderflow()) {
+      result = encoder.flush(slab);
+    }
+    if (!result.isUnderflow()) {
+      throw new IllegalStateException("Unexpected encoder result: " + result);
+    }
+    slab.put((byte)'\n');
+    slab.flip();
+    return new Frame(slab, true);
+  }
+
+  // 包装已编码好的字节，不再拷贝；调用方之后不得修改 bytes
+  static Frame wrap(byte[] bytes) {
+    return new Frame(ByteBuffer.wrap(bytes), false);
+  }
+
+  private static ByteBuffer acquireSlab() {
+    ByteBuffer slab = pool.poll();
+    if (slab == null) {
+      return ByteBuffer.allocateDirect(SLAB_SIZE);
+    }
+    pooledSlabs.decrementAndGet();
+    slab.clear();
+    return slab;
+  }
+
+  // 每个接收者使用独立的读位置，共享同一份字节，不做拷贝
+  ByteBuffer view() { return data.duplicate(); }
+
+  int length() { return data.remaining(); }
+
+  // 堆上的完整帧字节，供需要长期保存的场合：包装的整个数组直接返回（调用方不得修改），
+  // 内存块中的帧拷贝一份，之后与帧的引用计数无关
+  byte[] bytes() {
+    if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0 &&
+        data.remaining() == data.array().length) {
+      return data.array();
+    }
+    byte[] bytes = new byte[data.remaining()];
+    data.duplicate().get(bytes);
+    return bytes;
+  }
+
+  Frame retain() {
+    if (refCnt.getAndIncrement() <= 0) {
+      throw new IllegalStateException("Frame already released");
+    }
+    return this;
+  }
+
+  void release() {
+    int remaining = refCnt.decrementAndGet();
+    if (remaining < 0) {
+      throw new IllegalStateException("Frame released too many times");
+    }
+    if (remaining == 0 && pooled) {
+      recycleSlab(data);
+    }
+  }
+
+  private static void recycleSlab(ByteBuffer slab) {
+    if (pooledSlabs.incrementAndGet() <= MAX_POOLED_SLABS) {
+      pool.offer(slab);
+    } else {
+      pooledSlabs.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+// 从发送队列取出多帧，用一次 GatheringByteChannel.write 写出。
+// 只能由连接的写线程（或事件循环线程）使用
+final class FrameBatch {
+  private static final int MAX_FRAMES = 64;
+
+  private final Frame[] frames = new Frame[MAX_FRAMES];
+  private final ByteBuffer[] views = new ByteBuffer[MAX_FRAMES];
+  private int head;
+  private int tail;
+
+  boolean isEmpty() { return head == tail; }
+
+  // 从队列补充帧直到批次装满，返回批次是否非空
+  boolean fill(OutboundQueue queue) {
+    if (head == tail) {
+      head = 0;
+      tail = 0;
+    }
+    while (tail < MAX_FRAMES) {
+      Frame frame = queue.poll();
+      if (frame == null) {
+        break;
+      }
+      frames[tail] = frame;
+      views[tail] = frame.view();
+      tail++;
+    }
+    return head != tail;
+  }
+
+  // 写一次，已完整写出的帧立即释放；返回完整写出的帧数
+  int write(GatheringByteChannel channel) throws IOException {
+    channel.write(views, head, tail - head);
+    int completed = 0;
+    while (head < tail && !views[head].hasRemaining()) {
+      frames[head].release();
+      frames[head] = null;
+      views[head] = null;
+      head++;
+      completed++;
+    }
+    return completed;
+  }
+
+  void release() {
+    for (int i = head; i < tail; i++) {
+      frames[i].release();
+      frames[i] = null;
+      views[i] = null;
+    }
+    head = 0;
+    tail = 0;
+  }
+}
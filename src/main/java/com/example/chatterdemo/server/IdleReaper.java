@@ -0,0 +1,152 @@
+package com.example.chatterdemo.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 空闲连接回收：一个线程按固定节拍转动哈希时间轮。连接收到数据时只写一次自己的时间戳，
+// 不在轮上移动；轮转到连接所在的槽时才检查时间戳：空闲超过 pingInterval 发一次 ping，
+// 超过 idleTimeout 关闭，否则按最后活动时间放回对应的槽。每个连接大约每个 ping 周期
+// 被访问一次，与收发的消息量无关；一个节拍内到期的连接检查完后一起关闭
+final class IdleReaper {
+  private static final Logger logger =
+      Logger.getLogger(IdleReaper.class.getName());
+  private static final long TICK_MILLIS = 500;
+  // 2 的幂；超过一圈的期限在槽到期时发现还没到点，再放回去等下一圈
+  private static final int WHEEL_SIZE = 512;
+
+  // 由 ClientHandler 实现；除 lastActivity 外都只在回收线程上调用
+  interface Target {
+    // 最后一次收到数据的时间，取自 now()
+    long lastActivity();
+
+    boolean isOpen();
+
+    void ping();
+
+    void closeIdle();
+  }
+
+  private static final class Entry {
+    final Target target;
+    long deadline;
+    // 已为这个活动时间发过 ping，之后没有新数据就不再重复发
+    long pingedAt = -1;
+
+    Entry(Target target, long deadline) {
+      this.target = target;
+      this.deadline = deadline;
+    }
+  }
+
+  private final long pingMillis;
+  private final long timeoutMillis;
+  private final ServerMetrics metrics;
+  private final long originNanos = System.nanoTime();
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final ArrayDeque<Entry>[] wheel = new ArrayDeque[WHEEL_SIZE];
+  // 其他线程登记的新连接，下一个节拍时放到轮上；轮本身只由回收线程访问
+  private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+  private final List<Target> expired = new ArrayList<>();
+  private final ScheduledExecutorService timer =
+      Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "idle-reaper");
+        thread.setDaemon(true);
+        return thread;
+      });
+  // 粗粒度时钟（启动以来的毫秒数），每个节拍更新一次，记录活动时只需一次 volatile 读
+  private volatile long now;
+  private long processedTick;
+
+  IdleReaper(long pingMillis, long timeoutMillis, ServerMetrics metrics) {
+    this.pingMillis = pingMillis;
+    this.timeoutMillis = timeoutMillis;
+    this.metrics = metrics;
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new ArrayDeque<>();
+    }
+  }
+
+  void start() {
+    timer.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS,
+                              TimeUnit.MILLISECONDS);
+  }
+
+  void stop() { timer.shutdownNow(); }
+
+  long now() { return now; }
+
+  void track(Target target) {
+    added.add(new Entry(target, now + pingMillis));
+  }
+
+  private void tick() {
+    try {
+      now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - originNanos);
+      Entry entry;
+      while ((entry = added.poll()) != null) {
+        place(entry);
+      }
+      // 节拍被推迟时补上中间错过的槽
+      long currentTick = now / TICK_MILLIS;
+      while (processedTick < currentTick) {
+        processedTick++;
+        expire(wheel[(int) (processedTick & (WHEEL_SIZE - 1))]);
+      }
+      if (!expired.isEmpty()) {
+        for (Target target : expired) {
+          target.closeIdle();
+        }
+        metrics.idleDisconnects(expired.size());
+        logger.info("Closed " + expired.size() + " idle connection(s)");
+        expired.clear();
+      }
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Error reaping idle connections", e);
+    }
+  }
+
+  private void expire(ArrayDeque<Entry> slot) {
+    // 只处理本轮开始时已在槽里的条目，放回同一个槽的留到下一圈
+    for (int n = slot.size(); n > 0; n--) {
+      Entry entry = slot.poll();
+      Target target = entry.target;
+      if (!target.isOpen()) {
+        continue; // 已关闭的连接在这里自然移出
+      }
+      if (entry.deadline > now) {
+        place(entry);
+        continue;
+      }
+      long last = target.lastActivity();
+      long idle = now - last;
+      if (idle >= timeoutMillis) {
+        expired.add(target);
+        continue;
+      }
+      if (idle >= pingMillis) {
+        if (entry.pingedAt != last) {
+          entry.pingedAt = last;
+          target.ping();
+        }
+        entry.deadline = last + timeoutMillis;
+      } else {
+        entry.deadline = last + pingMillis;
+      }
+      place(entry);
+    }
+  }
+
+  private void place(Entry entry) {
+    long tick = Math.max(processedTick + 1,
+                         (entry.deadline + TICK_MILLIS - 1) / TICK_MILLIS);
+    wheel[(int) (tick & (WHEEL_SIZE - 1))].add(entry);
+  }
+}
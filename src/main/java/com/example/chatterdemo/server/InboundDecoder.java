@@ -0,0 +1,52 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 每个连接的入站解码状态：握手前按行解析 JSON，握手成功后切换为长度前缀的二进制帧。
+// 只能在连接的读线程（事件循环线程）上使用
+final class InboundDecoder {
+  private final int maxFrameBytes;
+  private final ConnectionHandler handler;
+  private final AtomicBoolean closed;
+  private final LineFramer lineFramer;
+  private LengthFramer lengthFramer;
+
+  InboundDecoder(int maxFrameBytes, ConnectionHandler handler,
+                 AtomicBoolean closed) {
+    this.maxFrameBytes = maxFrameBytes;
+    this.handler = handler;
+    this.closed = closed;
+    this.lineFramer = new LineFramer(maxFrameBytes);
+  }
+
+  // 由 handler 在 onLine 回调中调用，同一缓冲区中剩余的字节按二进制帧解析
+  void switchToBinary() {
+    if (lengthFramer == null) {
+      lengthFramer = new LengthFramer(maxFrameBytes);
+    }
+  }
+
+  void feed(ByteBuffer buf) throws IOException {
+    if (lengthFramer == null) {
+      lineFramer.feed(buf, this::deliverLine);
+    }
+    if (lengthFramer != null && buf.hasRemaining()) {
+      lengthFramer.feed(buf, this::deliverFrame);
+    }
+  }
+
+  private boolean deliverLine(String line) {
+    if (!closed.get()) {
+      handler.onLine(line);
+    }
+    return lengthFramer == null && !closed.get();
+  }
+
+  private void deliverFrame(byte[] array, int offset, int length) {
+    if (!closed.get()) {
+      handler.onBinaryFrame(array, offset, length);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// 按 varint 长度前缀切分二进制帧。完整落在读缓冲区内的帧直接回调，不做拷贝；
+// 跨越多次读取的帧才分配暂存数组
+final class LengthFramer {
+  interface Sink {
+    // array 可能是连接共用的读缓冲区，回调返回后不得再引用
+    void accept(byte[] array, int offset, int length);
+  }
+
+  private final int maxFrameBytes;
+  private int length = -1; // 当前帧体长度，-1 表示正在读长度前缀
+  private int lengthShift;
+  private int partialLength;
+  private byte[] body;
+  private int filled;
+
+  LengthFramer(int maxFrameBytes) { this.maxFrameBytes = maxFrameBytes; }
+
+  // buf 必须是堆缓冲区，处理完后 position 移动到 limit
+  void feed(ByteBuffer buf, Sink sink) throws IOException {
+    byte[] array = buf.array();
+    int offset = buf.arrayOffset();
+    int pos = buf.position();
+    int limit = buf.limit();
+    while (pos < limit) {
+      if (length < 0) {
+        int b = array[offset + pos++] & 0xff;
+        partialLength |= (b & 0x7f) << lengthShift;
+        lengthShift += 7;
+        if ((b & 0x80) != 0) {
+          if (lengthShift > 28) {
+            throw new IOException("Malformed frame length");
+          }
+          continue;
+        }
+        if (partialLength <= 0 || partialLength > maxFrameBytes) {
+          throw new IOException("Invalid frame length " + partialLength);
+        }
+        length = partialLength;
+        partialLength = 0;
+        lengthShift = 0;
+        continue;
+      }
+      int available = limit - pos;
+      if (body == null && available >= length) {
+        int frameLength = length;
+        length = -1;
+        sink.accept(array, offset + pos, frameLength);
+        pos += frameLength;
+        continue;
+      }
+      if (body == null) {
+        body = new byte[length];
+        filled = 0;
+      }
+      int n = Math.min(available, length - filled);
+      System.arraycopy(array, offset + pos, body, filled, n);
+      filled += n;
+      pos += n;
+      if (filled == length) {
+        byte[] frame = body;
+        body = null;
+        length = -1;
+        sink.accept(frame, 0, frame.length);
+      }
+    }
+    buf.position(limit);
+  }
+}
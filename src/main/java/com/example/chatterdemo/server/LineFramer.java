@@ -0,0 +1,75 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+// 按换行符切分字节流。读缓冲区由调用方复用，这里只在出现半行时才分配暂存数组，
+// 空闲连接不占用额外内存
+final class LineFramer {
+  private final int maxLineBytes;
+  private byte[] pending;
+  private int pendingLength;
+
+  LineFramer(int maxLineBytes) { this.maxLineBytes = maxLineBytes; }
+
+  // buf 必须是堆缓冲区（hasArray）。sink 返回 false 时立即停止，
+  // position 停在下一行开头，剩余字节留给调用方；否则 position 移动到 limit
+  void feed(ByteBuffer buf, Predicate<String> sink) throws IOException {
+    byte[] array = buf.array();
+    int offset = buf.arrayOffset();
+    int limit = buf.limit();
+    int lineStart = buf.position();
+    for (int i = lineStart; i < limit; i++) {
+      if (array[offset + i] != '\n') {
+        continue;
+      }
+      String line;
+      if (pending == null) {
+        checkLength(i - lineStart);
+        line = decode(array, offset + lineStart, i - lineStart);
+      } else {
+        append(array, offset + lineStart, i - lineStart);
+        line = decode(pending, 0, pendingLength);
+        pending = null;
+        pendingLength = 0;
+      }
+      lineStart = i + 1;
+      if (!sink.test(line)) {
+        buf.position(lineStart);
+        return;
+      }
+    }
+    if (lineStart < limit) {
+      append(array, offset + lineStart, limit - lineStart);
+    }
+    buf.position(limit);
+  }
+
+  private void append(byte[] src, int from, int length) throws IOException {
+    checkLength(pendingLength + length);
+    if (pending == null) {
+      pending = new byte[Math.max(256, length)];
+    } else if (pendingLength + length > pending.length) {
+      int newSize = Math.max(pendingLength + length, pending.length * 2);
+      pending = Arrays.copyOf(pending, Math.min(newSize, maxLineBytes));
+    }
+    System.arraycopy(src, from, pending, pendingLength, length);
+    pendingLength += length;
+  }
+
+  private void checkLength(int length) throws IOException {
+    if (length > maxLineBytes) {
+      throw new IOException("Line exceeds " + maxLineBytes + " bytes");
+    }
+  }
+
+  private static String decode(byte[] bytes, int from, int length) {
+    if (length > 0 && bytes[from + length - 1] == '\r') {
+      length--;
+    }
+    return new String(bytes, from, length, StandardCharsets.UTF_8);
+  }
+}
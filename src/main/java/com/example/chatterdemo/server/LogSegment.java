@@ -0,0 +1,317 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.BinaryCodec;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// 消息日志的一个段文件，文件名为段内第一条记录的序号。
+// 记录格式：int 长度 | int CRC32 | long 序号 | long 时间戳 | long 同聊天室上一条的序号 |
+// 二进制消息帧（长度为前面的 int）。聊天室内的记录由最后一个字段串成反向链表，
+// 向前翻页时每条只需一次索引查找，与日志总量和其他聊天室的消息数无关。
+// 只由写线程追加；读取通过内存映射进行，只能看到已经 fsync 的部分。
+// 稀疏索引每隔约 4 KiB 记录一次（序号, 文件位置）。段写满封存时把索引和当时各聊天室
+// 最新的序号写进同名的 .idx 文件，打开时直接加载；只有最后一段（以及缺少 .idx 的段）
+// 需要逐条扫描
+final class LogSegment {
+  private static final Logger logger =
+      Logger.getLogger(LogSegment.class.getName());
+  static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+  private static final int INDEX_INTERVAL_BYTES = 4096;
+  private static final int INDEX_MAGIC = 0x4c534958; // "LSIX"
+
+  final long baseSequence;
+  final Path path;
+  private final FileChannel channel;
+  private int writePosition;                 // 仅写线程访问
+  private volatile int committedSize;        // 已 fsync 的字节数，读取以此为界
+  private volatile long lastSequence;
+  private volatile long lastTimestamp;
+  private int bytesSinceIndex = INDEX_INTERVAL_BYTES;
+  // 稀疏索引与映射缓存，以 this 为锁
+  private long[] indexSequences = new long[16];
+  private int[] indexPositions = new int[16];
+  private int indexSize;
+  private MappedByteBuffer mapped;
+
+  private LogSegment(long baseSequence, Path path, FileChannel channel) {
+    this.baseSequence = baseSequence;
+    this.path = path;
+    this.channel = channel;
+    this.lastSequence = baseSequence - 1;
+  }
+
+  static Path pathFor(Path dir, long baseSequence) {
+    return dir.resolve(String.format("%020d.log", baseSequence));
+  }
+
+  static LogSegment create(Path dir, long baseSequence) throws IOException {
+    Path path = pathFor(dir, baseSequence);
+    FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    return new LogSegment(baseSequence, path, channel);
+  }
+
+  private static Path indexPathFor(Path path) {
+    String name = path.getFileName().toString();
+    return path.resolveSibling(name.substring(0, name.indexOf('.')) + ".idx");
+  }
+
+  // 打开已有段文件，重建索引并把每个聊天室最新的序号记入 roomHeads。
+  // 封存的段优先加载 .idx；否则逐条校验扫描，遇到不完整或校验失败的记录时，
+  // 最后一段（崩溃时正在写）截断，之前的段只记录警告，之后的部分不再读取
+  static LogSegment recover(Path path, Map<String, Long> roomHeads,
+                            boolean last) throws IOException {
+    String name = path.getFileName().toString();
+    long baseSequence = Long.parseLong(name.substring(0, name.indexOf('.')));
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+    LogSegment segment = new LogSegment(baseSequence, path, channel);
+    long fileSize = channel.size();
+    if (!last && segment.loadIndex(fileSize, roomHeads)) {
+      return segment;
+    }
+    ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+    int pos = 0;
+    CRC32 crc = new CRC32();
+    while (pos + HEADER_BYTES <= fileSize) {
+      int length = buf.getInt(pos);
+      if (length <= 0 || pos + HEADER_BYTES + (long) length > fileSize) {
+        break;
+      }
+      crc.reset();
+      crc.update(buf.slice(pos + 8, HEADER_BYTES - 8 + length));
+      if ((int) crc.getValue() != buf.getInt(pos + 4)) {
+        break;
+      }
+      long sequence = buf.getLong(pos + 8);
+      roomHeads.put(decode(buf, pos, length).getRoom(), sequence);
+      segment.indexRecord(sequence, pos, HEADER_BYTES + length);
+      segment.lastTimestamp = buf.getLong(pos + 16);
+      pos += HEADER_BYTES + length;
+    }
+    if (pos < fileSize) {
+      if (last) {
+        channel.truncate(pos);
+      } else {
+        logger.warning("Corrupt record at offset " + pos + " of sealed segment " +
+                       path + ", ignoring the rest of it");
+      }
+    }
+    segment.writePosition = pos;
+    segment.committedSize = pos;
+    return segment;
+  }
+
+  // 封存：写满后由写线程调用一次，roomHeads 为此时各聊天室最新的序号。
+  // 先写临时文件再原子替换，.idx 要么完整要么不存在
+  void seal(Map<String, Long> roomHeads) throws IOException {
+    Path indexPath = indexPathFor(path);
+    Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    CRC32 crc = new CRC32();
+    try (FileChannel file = FileChannel.open(
+             tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(file)), crc));
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(writePosition);
+      out.writeLong(lastSequence);
+      out.writeLong(lastTimestamp);
+      synchronized (this) {
+        out.writeInt(indexSize);
+        for (int i = 0; i < indexSize; i++) {
+          out.writeLong(indexSequences[i]);
+          out.writeInt(indexPositions[i]);
+        }
+      }
+      out.writeInt(roomHeads.size());
+      for (Map.Entry<String, Long> head : roomHeads.entrySet()) {
+        out.writeUTF(head.getKey());
+        out.writeLong(head.getValue());
+      }
+      out.writeInt((int) crc.getValue()); // 校验前面的全部内容
+      out.flush();
+      file.force(true);
+    }
+    Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // .idx 不存在、校验失败或与段文件大小不符时返回 false，改为扫描
+  private boolean loadIndex(long fileSize, Map<String, Long> roomHeads) {
+    Path indexPath = indexPathFor(path);
+    if (!Files.exists(indexPath)) {
+      return false;
+    }
+    try {
+      byte[] bytes = Files.readAllBytes(indexPath);
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length - 4);
+      DataInputStream in =
+          new DataInputStream(new ByteArrayInputStream(bytes));
+      if (in.readInt() != INDEX_MAGIC || in.readInt() != fileSize ||
+          ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt() !=
+              (int) crc.getValue()) {
+        logger.warning("Ignoring stale index " + indexPath);
+        return false;
+      }
+      long sequence = in.readLong();
+      long timestamp = in.readLong();
+      int entries = in.readInt();
+      long[] sequences = new long[Math.max(16, entries)];
+      int[] positions = new int[sequences.length];
+      for (int i = 0; i < entries; i++) {
+        sequences[i] = in.readLong();
+        positions[i] = in.readInt();
+      }
+      int rooms = in.readInt();
+      for (int i = 0; i < rooms; i++) {
+        roomHeads.put(in.readUTF(), in.readLong());
+      }
+      synchronized (this) {
+        indexSequences = sequences;
+        indexPositions = positions;
+        indexSize = entries;
+      }
+      lastSequence = sequence;
+      lastTimestamp = timestamp;
+      writePosition = (int) fileSize;
+      committedSize = (int) fileSize;
+      return true;
+    } catch (IOException | RuntimeException e) {
+      logger.warning("Ignoring unreadable index " + indexPath + ": " + e);
+      return false;
+    }
+  }
+
+  private void indexRecord(long sequence, int position, int recordBytes) {
+    if (bytesSinceIndex >= INDEX_INTERVAL_BYTES) {
+      synchronized (this) {
+        if (indexSize == indexSequences.length) {
+          indexSequences = Arrays.copyOf(indexSequences, indexSize * 2);
+          indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+        indexSequences[indexSize] = sequence;
+        indexPositions[indexSize] = position;
+        indexSize++;
+      }
+      bytesSinceIndex = 0;
+    }
+    bytesSinceIndex += recordBytes;
+    lastSequence = sequence;
+  }
+
+  // 把一条记录放进写线程的批量缓冲区，返回记录字节数；调用 write 之后才真正写出
+  int append(ByteBuffer batch, long sequence, long timestamp,
+             long previousInRoom, byte[] frame, CRC32 crc) {
+    int start = batch.position();
+    batch.putInt(frame.length).putInt(0).putLong(sequence)
+        .putLong(timestamp).putLong(previousInRoom).put(frame);
+    crc.reset();
+    crc.update(batch.duplicate().position(start + 8).limit(batch.position()));
+    batch.putInt(start + 4, (int) crc.getValue());
+    indexRecord(sequence, writePosition + start, HEADER_BYTES + frame.length);
+    lastTimestamp = timestamp;
+    return HEADER_BYTES + frame.length;
+  }
+
+  void write(ByteBuffer batch) throws IOException {
+    while (batch.hasRemaining()) {
+      writePosition += channel.write(batch, writePosition);
+    }
+  }
+
+  // fsync 之后新数据才对读取可见
+  void commit() throws IOException {
+    channel.force(false);
+    committedSize = writePosition;
+  }
+
+  int size() { return writePosition; }
+  long lastSequence() { return lastSequence; }
+  long lastTimestamp() { return lastTimestamp; }
+
+  // 读取指定序号的一条记录，尚未落盘或不在本段时返回 null。
+  // 从稀疏索引定位后最多向后扫描约 4 KiB
+  LoggedMessage readAt(long sequence) throws IOException {
+    int limit = committedSize;
+    if (sequence < baseSequence || sequence > lastSequence || limit == 0) {
+      return null;
+    }
+    ByteBuffer buf = map(limit);
+    int pos = indexedPosition(sequence);
+    while (pos + HEADER_BYTES <= limit) {
+      int length = buf.getInt(pos);
+      long found = buf.getLong(pos + 8);
+      if (found == sequence) {
+        return recordAt(buf, pos, length);
+      }
+      if (found > sequence) {
+        break;
+      }
+      pos += HEADER_BYTES + length;
+    }
+    return null;
+  }
+
+  private synchronized ByteBuffer map(int limit) throws IOException {
+    if (mapped == null || mapped.capacity() < limit) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, limit);
+    }
+    return mapped;
+  }
+
+  // 不大于 sequence 的最近一个索引点的文件位置
+  private synchronized int indexedPosition(long sequence) {
+    int i = Arrays.binarySearch(indexSequences, 0, indexSize, sequence);
+    if (i < 0) {
+      i = Math.max(0, -i - 2);
+    }
+    return indexSize > 0 ? indexPositions[i] : 0;
+  }
+
+  private static LoggedMessage recordAt(ByteBuffer buf, int pos, int length)
+      throws IOException {
+    return new LoggedMessage(buf.getLong(pos + 8), buf.getLong(pos + 24),
+                             buf.getLong(pos + 16), decode(buf, pos, length));
+  }
+
+  private static Message decode(ByteBuffer buf, int pos, int length)
+      throws IOException {
+    byte[] frame = new byte[length];
+    buf.get(pos + HEADER_BYTES, frame);
+    return BinaryCodec.readFrame(new ByteArrayInputStream(frame));
+  }
+
+  void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // 关闭时忽略
+    }
+  }
+
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(indexPathFor(path));
+  }
+}
@@ -0,0 +1,8 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+
+// 消息日志中的一条记录：全局递增的序号、同一聊天室上一条记录的序号（0 表示没有）、
+// 写入时间（毫秒）和消息本身（room 已填好）
+record LoggedMessage(long sequence, long previousInRoom, long timestamp,
+                     Message message) {}
@@ -0,0 +1,266 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.BinaryCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// 追加写的分段消息日志（所有聊天室共用一个序号空间）。
+// append 分配序号后把消息放进有界队列，队列满时丢弃并计数，从不阻塞广播；
+// 后台写线程按批编码、写出并只做一次 fsync（group commit），段写满后切换到新段，
+// 并按时间删除过期的旧段。读取走内存映射，见 LogSegment
+final class MessageLog {
+  private static final Logger logger =
+      Logger.getLogger(MessageLog.class.getName());
+  private static final int QUEUE_CAPACITY = 65536;
+  private static final int MAX_BATCH = 1024;
+
+  private final Path dir;
+  private final long segmentBytes;
+  private final long retentionMillis;
+  private final List<LogSegment> segments = new CopyOnWriteArrayList<>();
+  private final BlockingQueue<Pending> queue =
+      new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final LongAdder dropped = new LongAdder();
+  private final Pending shutdownMarker = new Pending(null, 0, 0);
+  // 聊天室 -> 最新一条已落盘记录的序号，翻页读取的起点
+  private final Map<String, Long> roomHeads = new ConcurrentHashMap<>();
+  // 聊天室 -> 最新一条已写出记录的序号，仅写线程访问，用于填写反向链接
+  private final Map<String, Long> writtenHeads = new HashMap<>();
+  private volatile long nextSequence; // 以 this 为锁分配
+  private Thread writer;
+
+  private static final class Pending {
+    final Message message;
+    final long sequence;
+    final long timestamp;
+
+    Pending(Message message, long sequence, long timestamp) {
+      this.message = message;
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+    }
+  }
+
+  MessageLog(Path dir, long segmentBytes, long retentionMillis) {
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.retentionMillis = retentionMillis;
+  }
+
+  void open() throws IOException {
+    Files.createDirectories(dir);
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.log")) {
+      stream.forEach(files::add);
+    }
+    files.sort(null); // 文件名是定长的起始序号，字典序即序号顺序
+    for (int i = 0; i < files.size(); i++) {
+      segments.add(LogSegment.recover(files.get(i), writtenHeads,
+                                      i == files.size() - 1));
+    }
+    roomHeads.putAll(writtenHeads);
+    LogSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    nextSequence = last == null ? 1 : last.lastSequence() + 1;
+    if (last == null || last.size() >= segmentBytes) {
+      segments.add(LogSegment.create(dir, nextSequence));
+    }
+    logger.info("Opened message log in " + dir + " (" + segments.size() +
+                " segments, next sequence " + nextSequence + ")");
+    writer = new Thread(this::writeLoop, "message-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  // room 为消息所属聊天室，写入的副本会带上它。返回分配的序号，队列已满时返回 0。
+  // 分配序号和入队在同一把锁内，保证队列中的序号连续递增
+  long append(String room, Message message) {
+    Message copy = new Message(message.getType(), message.getNickname(),
+                               message.getText());
+    copy.setRoom(room);
+    long timestamp = System.currentTimeMillis();
+    synchronized (this) {
+      long sequence = nextSequence;
+      if (!queue.offer(new Pending(copy, sequence, timestamp))) {
+        dropped.increment();
+        return 0;
+      }
+      nextSequence = sequence + 1;
+      return sequence;
+    }
+  }
+
+  long droppedAppends() { return dropped.sum(); }
+
+  // 读取聊天室中序号小于 before 的最近 max 条已落盘记录，按时间顺序返回。
+  // 沿记录中的反向链接逐条查找，代价只与 max 有关。before 必须是该聊天室的记录
+  // 或大于其最新记录的序号，否则返回空列表；所在段已过期删除的记录到此为止
+  List<LoggedMessage> readRoom(String room, long before, int max)
+      throws IOException {
+    LogSegment[] snapshot = segments.toArray(new LogSegment[0]);
+    List<LoggedMessage> page = new ArrayList<>(Math.min(max, 256));
+    long sequence = roomHeads.getOrDefault(room, 0L);
+    if (sequence >= before) {
+      LoggedMessage anchor = readAt(snapshot, before);
+      if (anchor == null || !room.equals(anchor.message().getRoom())) {
+        return page;
+      }
+      sequence = anchor.previousInRoom();
+    }
+    while (sequence > 0 && page.size() < max) {
+      LoggedMessage record = readAt(snapshot, sequence);
+      if (record == null) {
+        break;
+      }
+      page.add(record);
+      sequence = record.previousInRoom();
+    }
+    Collections.reverse(page);
+    return page;
+  }
+
+  private static LoggedMessage readAt(LogSegment[] snapshot, long sequence)
+      throws IOException {
+    int low = 0;
+    int high = snapshot.length - 1;
+    while (low <= high) { // 找 baseSequence 不大于 sequence 的最后一段
+      int mid = (low + high) >>> 1;
+      if (snapshot[mid].baseSequence <= sequence) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high >= 0 ? snapshot[high].readAt(sequence) : null;
+  }
+
+  private void writeLoop() {
+    List<Pending> batch = new ArrayList<>(MAX_BATCH);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    CRC32 crc = new CRC32();
+    long nextRetentionCheck = 0;
+    boolean stopping = false;
+    while (!stopping) {
+      try {
+        Pending first = queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, MAX_BATCH - 1);
+        }
+      } catch (InterruptedException e) {
+        continue;
+      }
+      stopping = batch.remove(shutdownMarker);
+      try {
+        if (!batch.isEmpty()) {
+          buffer = writeBatch(batch, buffer, crc);
+        }
+        long now = System.currentTimeMillis();
+        if (now >= nextRetentionCheck) {
+          applyRetention(now);
+          nextRetentionCheck = now + TimeUnit.MINUTES.toMillis(1);
+        }
+      } catch (IOException e) {
+        logger.log(Level.SEVERE, "Error writing message log", e);
+      }
+      batch.clear();
+    }
+  }
+
+  private ByteBuffer writeBatch(List<Pending> batch, ByteBuffer buffer,
+                                CRC32 crc) throws IOException {
+    LogSegment active = segments.get(segments.size() - 1);
+    buffer.clear();
+    for (Pending pending : batch) {
+      byte[] frame = BinaryCodec.encodeFrame(pending.message);
+      int recordBytes = LogSegment.HEADER_BYTES + frame.length;
+      if (recordBytes > buffer.remaining()) {
+        writeOut(buffer, active);
+        if (recordBytes > buffer.capacity()) {
+          buffer = ByteBuffer.allocateDirect(recordBytes);
+        }
+      }
+      Long previous =
+          writtenHeads.put(pending.message.getRoom(), pending.sequence);
+      active.append(buffer, pending.sequence, pending.timestamp,
+                    previous != null ? previous : 0, frame, crc);
+    }
+    writeOut(buffer, active);
+    active.commit();
+    for (Pending pending : batch) {
+      roomHeads.put(pending.message.getRoom(), pending.sequence);
+    }
+    if (active.size() >= segmentBytes) {
+      try {
+        active.seal(writtenHeads);
+      } catch (IOException e) {
+        // 没有 .idx 的段在下次打开时扫描重建，不影响继续写
+        logger.log(Level.WARNING, "Error writing index of " + active.path, e);
+      }
+      segments.add(
+          LogSegment.create(dir, batch.get(batch.size() - 1).sequence + 1));
+    }
+    return buffer;
+  }
+
+  private static void writeOut(ByteBuffer buffer, LogSegment active)
+      throws IOException {
+    buffer.flip();
+    active.write(buffer);
+    buffer.clear();
+  }
+
+  // 删除最后一条记录早于保留期限的段，当前正在写的段总是保留
+  private void applyRetention(long now) {
+    if (retentionMillis <= 0) {
+      return;
+    }
+    long cutoff = now - retentionMillis;
+    while (segments.size() > 1 && segments.get(0).lastTimestamp() < cutoff) {
+      LogSegment expired = segments.remove(0);
+      try {
+        expired.delete();
+        logger.info("Deleted expired message log segment " + expired.path);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Error deleting " + expired.path, e);
+      }
+    }
+  }
+
+  // 写完队列中已有的消息后关闭
+  void close() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      queue.put(shutdownMarker);
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (LogSegment segment : segments) {
+      segment.close();
+    }
+    long lost = dropped.sum();
+    if (lost > 0) {
+      logger.warning(lost + " messages were not written to the message log");
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.example.chatterdemo.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// 把 ServerMetrics 注册为 JMX MBean，名称带实际监听的端口（配置为 0 时由系统分配，
+// 同一进程内的多个服务端互不冲突）；配置了 metricsPort 时另外在本机回环地址上提供
+// GET /metrics 文本抓取端点
+final class MetricsExporter {
+  private static final Logger logger =
+      Logger.getLogger(MetricsExporter.class.getName());
+
+  private final ServerMetrics metrics;
+  private final ServerConfig config;
+  private final int port;
+  private ObjectName objectName;
+  private HttpServer httpServer;
+
+  MetricsExporter(ServerMetrics metrics, ServerConfig config, int port) {
+    this.metrics = metrics;
+    this.config = config;
+    this.port = port;
+  }
+
+  void start() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(
+          "com.example.chatterdemo:type=ChatServer,port=" + port);
+      server.registerMBean(
+          new StandardMBean(metrics, ServerMetricsMBean.class), name);
+      objectName = name;
+    } catch (JMException e) {
+      logger.log(Level.WARNING, "Error registering metrics MBean", e);
+    }
+    if (config.getMetricsPort() <= 0) {
+      return;
+    }
+    try {
+      httpServer = HttpServer.create(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                config.getMetricsPort()),
+          0);
+      httpServer.createContext("/metrics", this::handleScrape);
+      httpServer.start();
+      logger.info("Metrics available at http://" +
+                  InetAddress.getLoopbackAddress().getHostAddress() + ":" +
+                  config.getMetricsPort() + "/metrics");
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error starting metrics endpoint", e);
+    }
+  }
+
+  private void handleScrape(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type",
+                                        "text/plain; version=0.0.4");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  void stop() {
+    if (httpServer != null) {
+      httpServer.stop(0);
+    }
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException e) {
+        logger.log(Level.WARNING, "Error unregistering metrics MBean", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 非阻塞连接：读写都在所属的 NioEventLoop 线程上完成，send 只负责入队
+final class NioConnection implements Connection {
+  private static final Logger logger =
+      Logger.getLogger(NioConnection.class.getName());
+
+  private final SocketChannel channel;
+  private final NioEventLoop loop;
+  private final InboundDecoder decoder;
+  private final ConnectionHandler handler;
+  private final String remoteAddress;
+  private final OutboundQueue outbound;
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  // 发送队列溢出后不再接受新帧，等待异步关闭
+  private final AtomicBoolean overflowed = new AtomicBoolean();
+  // 以下字段仅在事件循环线程访问
+  private SelectionKey key;
+  private FrameBatch batch; // 已出队但还没写完的帧，首次发送时创建
+
+  NioConnection(SocketChannel channel, NioEventLoop loop, ServerConfig config,
+                Function<Connection, ConnectionHandler> handlerFactory)
+      throws IOException {
+    this.channel = channel;
+    this.loop = loop;
+    this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+    this.outbound =
+        new OutboundQueue(config.getOutboundQueueCapacity(),
+                          config.getOverflowPolicy(), this::skippedNotice);
+    // decoder 依赖处理器，最后创建；处理器构造时只保存连接，
+    // 交给其他线程（如空闲回收）要等 onOpen
+    this.handler = handlerFactory.apply(this);
+    this.decoder =
+        new InboundDecoder(config.getMaxLineBytes(), handler, closed);
+  }
+
+  private Frame skippedNotice(int skipped) {
+    return handler.skippedNotice(skipped);
+  }
+
+  // 在事件循环线程上调用
+  void register() {
+    handler.onOpen();
+    try {
+      key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+      if (!outbound.isEmpty()) {
+        flush();
+      }
+    } catch (IOException e) {
+      close();
+    }
+  }
+
+  void handleRead(ByteBuffer readBuffer) {
+    readBuffer.clear();
+    try {
+      int n = channel.read(readBuffer);
+      if (n < 0) {
+        close();
+        return;
+      }
+      readBuffer.flip();
+      decoder.feed(readBuffer);
+    } catch (IOException e) {
+      if (!closed.get()) {
+        logger.log(Level.WARNING, "Client connection error", e);
+      }
+      close();
+    }
+  }
+
+  @Override
+  public void send(Frame frame) {
+    if (closed.get() || overflowed.get()) {
+      frame.release();
+      return;
+    }
+    if (!outbound.offer(frame)) {
+      frame.release();
+      // 发送方可能正持有聊天室的锁在广播，onClose 又要向其他聊天室广播，
+      // 在这里同步关闭会嵌套加锁，交给另一个任务执行
+      if (overflowed.compareAndSet(false, true)) {
+        logger.warning("Outbound queue overflow, disconnecting " +
+                       remoteAddress);
+        loop.execute(this::close);
+      }
+      return;
+    }
+    if (flushScheduled.compareAndSet(false, true)) {
+      loop.scheduleFlush(this);
+    }
+  }
+
+  // 尽量写完队列，每次聚合多帧做一次 gathering write；内核缓冲区满时改为等待 OP_WRITE。
+  // 由事件循环在合并等待结束或套接字可写时调用
+  void flush() {
+    flushScheduled.set(false);
+    if (closed.get() || key == null) {
+      return;
+    }
+    if (batch == null) {
+      batch = new FrameBatch();
+    }
+    try {
+      while (batch.fill(outbound)) {
+        handler.onWrite(batch.write(channel));
+        if (!batch.isEmpty()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          return;
+        }
+      }
+      if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      }
+    } catch (IOException | CancelledKeyException e) {
+      logger.warning("Error sending message to client");
+      close();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error closing client resources", e);
+    }
+    outbound.clear();
+    // 正在写的批次只能由事件循环线程释放
+    if (loop.inEventLoop()) {
+      releaseBatch();
+    } else {
+      loop.execute(this::releaseBatch);
+    }
+    if (outbound.dropped() > 0) {
+      logger.info("Connection " + remoteAddress + " dropped " +
+                  outbound.dropped() + " outbound frame(s), max queue depth " +
+                  outbound.maxDepth());
+    }
+    handler.onClose();
+  }
+
+  private void releaseBatch() {
+    if (batch != null) {
+      batch.release();
+    }
+  }
+
+  @Override
+  public void switchInboundToBinary() {
+    decoder.switchToBinary();
+  }
+
+  @Override
+  public String remoteAddress() {
+    return remoteAddress;
+  }
+
+  @Override
+  public OutboundQueue outboundQueue() {
+    return outbound;
+  }
+}
@@ -0,0 +1,151 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 单线程事件循环：一个 Selector 负责一批连接的读写，其他线程通过 execute 投递任务。
+// 有数据要发送的连接通过 scheduleFlush 登记，从第一个登记起最多等待 flushDelay
+// 后统一写出，期间到达的帧合并成一次 gathering write
+final class NioEventLoop implements Runnable {
+  private static final Logger logger =
+      Logger.getLogger(NioEventLoop.class.getName());
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final Selector selector;
+  private final Thread thread;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean wakeupPending = new AtomicBoolean();
+  private final Queue<NioConnection> pendingFlushes =
+      new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean flushArmed = new AtomicBoolean();
+  private volatile long flushDeadline;
+  private final long flushDelayNanos;
+  // 同一个循环内所有连接共用的读缓冲区
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+  private volatile boolean running = true;
+
+  NioEventLoop(String name, int flushDelayMillis) throws IOException {
+    selector = Selector.open();
+    thread = new Thread(this, name);
+    flushDelayNanos = TimeUnit.MILLISECONDS.toNanos(flushDelayMillis);
+  }
+
+  void start() { thread.start(); }
+
+  Selector selector() { return selector; }
+
+  boolean inEventLoop() { return Thread.currentThread() == thread; }
+
+  void execute(Runnable task) {
+    tasks.add(task);
+    if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  // 任意线程调用；同一连接在写出前只应登记一次
+  void scheduleFlush(NioConnection connection) {
+    pendingFlushes.add(connection);
+    if (flushArmed.compareAndSet(false, true)) {
+      flushDeadline = System.nanoTime() + flushDelayNanos;
+      if (!inEventLoop()) {
+        selector.wakeup(); // 让 select 按新的截止时间重新计算超时
+      }
+    }
+  }
+
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        wakeupPending.set(false);
+        long timeoutMillis = tasks.isEmpty() ? flushTimeoutMillis() : 0;
+        if (timeoutMillis < 0) {
+          selector.select();
+        } else if (timeoutMillis == 0) {
+          selector.selectNow();
+        } else {
+          selector.select(timeoutMillis);
+        }
+        processSelectedKeys();
+        runTasks();
+        flushDue();
+      } catch (IOException e) {
+        logger.log(Level.SEVERE, "Event loop error", e);
+      }
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error closing selector", e);
+    }
+  }
+
+  private void processSelectedKeys() {
+    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      it.remove();
+      NioConnection connection = (NioConnection)key.attachment();
+      try {
+        if (key.isReadable()) {
+          connection.handleRead(readBuffer);
+        }
+        if (key.isValid() && key.isWritable()) {
+          connection.flush();
+        }
+      } catch (CancelledKeyException e) {
+        connection.close();
+      }
+    }
+  }
+
+  // 距离下一次合并写出的毫秒数（向上取整），-1 表示没有待写出的连接
+  private long flushTimeoutMillis() {
+    if (!flushArmed.get()) {
+      return -1;
+    }
+    long remaining = flushDeadline - System.nanoTime();
+    return remaining <= 0
+        ? 0
+        : TimeUnit.NANOSECONDS.toMillis(remaining + 999_999);
+  }
+
+  private void flushDue() {
+    if (!flushArmed.get() || flushDeadline - System.nanoTime() > 0) {
+      return;
+    }
+    // 先解除，之后登记的连接会开始新的一轮等待
+    flushArmed.set(false);
+    NioConnection connection;
+    while ((connection = pendingFlushes.poll()) != null) {
+      connection.flush();
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Error running event loop task", e);
+      }
+    }
+  }
+}
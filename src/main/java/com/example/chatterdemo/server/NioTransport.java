@@ -0,0 +1,92 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.utils.HotPathLog;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Selector 模式：调用 serve 的线程只负责 accept，连接按轮询分配给固定数量的事件循环
+final class NioTransport implements Transport {
+  private static final Logger logger =
+      Logger.getLogger(NioTransport.class.getName());
+
+  private final ServerSocketChannel serverChannel;
+  private final Function<Connection, ConnectionHandler> handlerFactory;
+  private final ServerConfig config;
+  private final NioEventLoop[] loops;
+  private volatile Selector acceptSelector;
+  private volatile boolean running = true;
+  private int nextLoop;
+
+  NioTransport(ServerSocketChannel serverChannel, ServerConfig config,
+               Function<Connection, ConnectionHandler> handlerFactory)
+      throws IOException {
+    this.serverChannel = serverChannel;
+    this.config = config;
+    this.handlerFactory = handlerFactory;
+    this.loops = new NioEventLoop[config.getIoThreads()];
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new NioEventLoop("nio-loop-" + i,
+                                  config.getWriteCoalesceMillis());
+    }
+  }
+
+  @Override
+  public void serve() throws IOException {
+    for (NioEventLoop loop : loops) {
+      loop.start();
+    }
+    logger.info("NIO transport running with " + loops.length +
+                " event loop(s)");
+    serverChannel.configureBlocking(false);
+    try (Selector selector = Selector.open()) {
+      acceptSelector = selector;
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      while (running) {
+        selector.select();
+        selector.selectedKeys().clear();
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+          accept(channel);
+        }
+      }
+    }
+  }
+
+  private void accept(SocketChannel channel) {
+    try {
+      channel.configureBlocking(false);
+      SocketAddress remote = channel.getRemoteAddress();
+      HotPathLog.log(logger, Level.INFO,
+                     () -> "New client connected: " + remote);
+      NioEventLoop loop = loops[Math.floorMod(nextLoop++, loops.length)];
+      NioConnection connection =
+          new NioConnection(channel, loop, config, handlerFactory);
+      loop.execute(connection::register);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error accepting client connection", e);
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    Selector selector = acceptSelector;
+    if (selector != null) {
+      selector.wakeup();
+    }
+    for (NioEventLoop loop : loops) {
+      loop.shutdown();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.example.chatterdemo.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+// 每个连接一个有界发送队列：广播线程只负责入队，由连接自己的写线程/事件循环取出发送。
+// 锁只保护内存中的队列操作，持锁期间不做任何 I/O。
+// 入队的帧由队列持有一个引用，被丢弃时由队列释放，被取出后由取出方释放
+final class OutboundQueue {
+  private final int capacity;
+  private final ServerConfig.OverflowPolicy policy;
+  // COALESCE 策略下用来生成“跳过了 N 条消息”的提示帧
+  private final IntFunction<Frame> skippedNotice;
+  private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private Frame lastNotice;
+  private int lastNoticeCount;
+
+  // 计数器只在持锁时写入，读取不需要加锁
+  private volatile int depth;
+  private volatile int maxDepth;
+  private volatile long enqueued;
+  private volatile long dropped;
+
+  OutboundQueue(int capacity, ServerConfig.OverflowPolicy policy,
+                IntFunction<Frame> skippedNotice) {
+    this.capacity = Math.max(1, capacity);
+    this.policy = policy;
+    this.skippedNotice = skippedNotice;
+  }
+
+  // 返回 false 表示队列已满且策略为 DISCONNECT，此时帧的引用仍归调用方
+  boolean offer(Frame frame) {
+    lock.lock();
+    try {
+      if (frames.size() >= capacity) {
+        switch (policy) {
+        case DISCONNECT:
+          dropped++;
+          return false;
+        case COALESCE:
+          coalesce();
+          break;
+        case DROP_OLDEST:
+        default:
+          frames.pollFirst().release();
+          dropped++;
+        }
+      }
+      frames.addLast(frame);
+      enqueued++;
+      updateDepth();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // 丢弃所有尚未开始发送的帧，换成一条提示
+  private void coalesce() {
+    int discarded = frames.size();
+    int skipped = discarded;
+    if (lastNotice != null && frames.peekFirst() == lastNotice) {
+      // 上一个提示帧被替换，不是消息，不计入丢弃数
+      discarded--;
+      skipped += lastNoticeCount - 1;
+    }
+    dropped += discarded;
+    releaseAll();
+    lastNotice = skippedNotice.apply(skipped);
+    lastNoticeCount = skipped;
+    frames.addLast(lastNotice);
+  }
+
+  Frame poll() {
+    lock.lock();
+    try {
+      Frame frame = frames.pollFirst();
+      if (frame != null) {
+        updateDepth();
+      }
+      return frame;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  boolean isEmpty() { return depth == 0; }
+
+  void clear() {
+    lock.lock();
+    try {
+      releaseAll();
+      updateDepth();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void releaseAll() {
+    Frame frame;
+    while ((frame = frames.pollFirst()) != null) {
+      frame.release();
+    }
+  }
+
+  private void updateDepth() {
+    depth = frames.size();
+    if (depth > maxDepth) {
+      maxDepth = depth;
+    }
+  }
+
+  int depth() { return depth; }
+  int maxDepth() { return maxDepth; }
+  long enqueued() { return enqueued; }
+  long dropped() { return dropped; }
+}
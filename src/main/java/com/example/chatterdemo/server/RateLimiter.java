@@ -0,0 +1,98 @@
+package com.example.chatterdemo.server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 每个连接一个：按消息数和字节数两个令牌桶限流，另有一个违规桶记录被拒绝的次数，
+// 违规桶耗尽说明客户端在持续刷屏，应当断开。全部状态都是原子变量，没有锁
+final class RateLimiter {
+  enum Verdict {
+    ACCEPT,
+    // 本轮第一次超限，回复一次提示；之后的 DROP 直接丢弃，避免提示本身放大流量
+    THROTTLE,
+    DROP,
+    // 只返回一次，之后的消息都是 DROP
+    DISCONNECT
+  }
+
+  private final TokenBucket messages; // 为 null 表示不限
+  private final TokenBucket bytes;
+  private final TokenBucket violations;
+  private final AtomicBoolean throttled = new AtomicBoolean();
+  private final AtomicBoolean banned = new AtomicBoolean();
+
+  private RateLimiter(TokenBucket messages, TokenBucket bytes,
+                      TokenBucket violations) {
+    this.messages = messages;
+    this.bytes = bytes;
+    this.violations = violations;
+  }
+
+  // 没有配置任何限额时返回 null
+  static RateLimiter create(ServerConfig config) {
+    long now = System.nanoTime();
+    TokenBucket messages =
+        config.getRateLimitMessagesPerSecond() > 0
+            ? new TokenBucket(config.getRateLimitMessagesPerSecond(),
+                              config.getRateLimitMessageBurst(), now)
+            : null;
+    TokenBucket bytes =
+        config.getRateLimitBytesPerSecond() > 0
+            ? new TokenBucket(config.getRateLimitBytesPerSecond(),
+                              config.getRateLimitByteBurst(), now)
+            : null;
+    if (messages == null && bytes == null) {
+      return null;
+    }
+    // 违规额度每秒恢复一次
+    TokenBucket violations =
+        config.getRateLimitMaxViolations() > 0
+            ? new TokenBucket(1, config.getRateLimitMaxViolations(), now)
+            : null;
+    return new RateLimiter(messages, bytes, violations);
+  }
+
+  Verdict acquire(int length, long nowNanos) {
+    if ((messages == null || messages.tryAcquire(1, nowNanos)) &&
+        (bytes == null || bytes.tryAcquire(length, nowNanos))) {
+      if (throttled.get()) {
+        throttled.set(false);
+      }
+      return Verdict.ACCEPT;
+    }
+    if (violations != null && !violations.tryAcquire(1, nowNanos)) {
+      return banned.compareAndSet(false, true) ? Verdict.DISCONNECT
+                                               : Verdict.DROP;
+    }
+    return throttled.compareAndSet(false, true) ? Verdict.THROTTLE
+                                                : Verdict.DROP;
+  }
+
+  // GCRA 形式的令牌桶：只保存一个“理论到达时间” tat，每次取令牌把它向后推 cost，
+  // 推过 now + 桶容量对应的时长就拒绝。一次 CAS 完成判断和扣减，不需要单独的补充线程
+  private static final class TokenBucket {
+    private final long nanosPerToken;
+    private final long toleranceNanos;
+    private final AtomicLong tat;
+
+    TokenBucket(long tokensPerSecond, long burst, long nowNanos) {
+      nanosPerToken = Math.max(1, 1_000_000_000L / tokensPerSecond);
+      toleranceNanos = Math.max(1, burst) * nanosPerToken;
+      tat = new AtomicLong(nowNanos); // 初始时桶是满的
+    }
+
+    boolean tryAcquire(long tokens, long nowNanos) {
+      long cost = tokens * nanosPerToken;
+      while (true) {
+        long current = tat.get();
+        long next = (current - nowNanos > 0 ? current : nowNanos) + cost;
+        if (next - nowNanos > toleranceNanos) {
+          return false;
+        }
+        if (tat.compareAndSet(current, next)) {
+          return true;
+        }
+      }
+    }
+  }
+}
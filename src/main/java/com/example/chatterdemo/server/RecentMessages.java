@@ -0,0 +1,69 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// 一个聊天室最近 N 条消息的环形缓冲区，无锁：写入者领取一个递增下标后覆盖对应槽位，
+// 读取者只接受下标仍在最近 N 条窗口内的槽位。写入时直接保存广播已编码好的各格式字节，
+// 缺少的格式在第一次回放时编码一次；回放时每个接收者只创建一个包装同一数组的 Frame，
+// 不再编码也不读磁盘
+final class RecentMessages {
+  private static final WireFormat[] FORMATS = WireFormat.values();
+  private final AtomicReferenceArray<Entry> slots;
+  private final AtomicLong written = new AtomicLong();
+
+  private static final class Entry {
+    final long index;
+    final Message message;
+    final AtomicReferenceArray<byte[]> encoded =
+        new AtomicReferenceArray<>(FORMATS.length);
+
+    Entry(long index, Message message) {
+      this.index = index;
+      this.message = message;
+    }
+
+    // 并发时可能重复编码，结果相同，谁先写入用谁的
+    byte[] encoded(WireFormat format) {
+      byte[] bytes = encoded.get(format.ordinal());
+      if (bytes == null) {
+        bytes = format.encodeBytes(message);
+        if (!encoded.compareAndSet(format.ordinal(), null, bytes)) {
+          bytes = encoded.get(format.ordinal());
+        }
+      }
+      return bytes;
+    }
+  }
+
+  RecentMessages(int capacity) {
+    slots = new AtomicReferenceArray<>(capacity);
+  }
+
+  // 消息入队后不能再被修改；frames 为这条消息的广播，在它释放之前调用
+  void add(Message message, BroadcastFrames frames) {
+    long index = written.getAndIncrement();
+    Entry entry = new Entry(index, message);
+    for (WireFormat format : FORMATS) {
+      Frame frame = frames.encoded(format);
+      if (frame != null) {
+        entry.encoded.set(format.ordinal(), frame.bytes());
+      }
+    }
+    slots.set((int) (index % slots.length()), entry);
+  }
+
+  // 按时间顺序把最近的消息交给 sink，每条都是新的、由 sink 持有的 Frame
+  void replay(WireFormat format, Consumer<Frame> sink) {
+    long end = written.get();
+    for (long i = Math.max(0, end - slots.length()); i < end; i++) {
+      Entry entry = slots.get((int) (i % slots.length()));
+      // 槽位还没写入，或已被更新的消息覆盖
+      if (entry != null && entry.index == i) {
+        sink.accept(Frame.wrap(entry.encoded(format)));
+      }
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.example.chatterdemo.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 聊天室 -> 成员集合的索引。广播只遍历目标聊天室的成员，代价与聊天室大小成正比，
+// 与在线总人数无关。成员集合是并发集合，遍历时不加锁，可以与加入/离开同时进行
+final class RoomIndex<T> {
+  private final Map<String, Set<T>> rooms = new ConcurrentHashMap<>();
+
+  // 返回 false 表示已经是成员
+  boolean join(String room, T member) {
+    return rooms.computeIfAbsent(room, r -> ConcurrentHashMap.newKeySet())
+        .add(member);
+  }
+
+  // 最后一个成员离开时在 compute 中原子地删除聊天室，不会与并发的 join 冲突
+  boolean leave(String room, T member) {
+    boolean[] removed = new boolean[1];
+    rooms.computeIfPresent(room, (r, members) -> {
+      removed[0] = members.remove(member);
+      return members.isEmpty() ? null : members;
+    });
+    return removed[0];
+  }
+
+  // 弱一致的只读视图，聊天室不存在时为空集合
+  Set<T> members(String room) {
+    Set<T> members = rooms.get(room);
+    return members != null ? Collections.unmodifiableSet(members)
+                           : Collections.emptySet();
+  }
+}
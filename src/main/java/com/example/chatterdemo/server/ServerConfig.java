@@ -0,0 +1,280 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.utils.HotPathLog;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// 服务端配置：启动参数形如 --port=12345，未指定时回退到系统属性 -Dchatter.port=12345
+public class ServerConfig {
+  // BLOCKING 为每个连接分配一个线程池线程，VIRTUAL 为每个连接分配一个虚拟线程（需 JDK 21+）
+  public enum TransportMode { NIO, BLOCKING, VIRTUAL }
+
+  // 发送队列满时的处理方式：丢弃最旧的帧、断开连接、或把积压合并为一条提示
+  public enum OverflowPolicy { DROP_OLDEST, DISCONNECT, COALESCE }
+
+  public static final int DEFAULT_PORT = 12345;
+
+  private int port = DEFAULT_PORT;
+  private TransportMode transport = TransportMode.NIO;
+  private int ioThreads = Runtime.getRuntime().availableProcessors();
+  private int maxLineBytes = 1 << 20;
+  private int outboundQueueCapacity = 1024;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+  private boolean binaryProtocol = true;
+  // 是否允许客户端协商压缩的二进制协议
+  private boolean compression = true;
+  // users.log 累计多少条记录后合并成新的 users.json 快照
+  private int userLogCompactThreshold = 10000;
+  // 收发消息等热路径日志的写出方式，以及每秒最多写出的条数（<= 0 不限）
+  private HotPathLog.Mode logMode = HotPathLog.Mode.ASYNC;
+  private int logRateLimit = 1000;
+  // 本机文本指标端点的端口，0 表示不开启（JMX 始终可用）
+  private int metricsPort = 0;
+  // 消息日志目录（为空时放在 users.json 旁的 history 目录）、单个段文件大小和保留时长（<= 0 永久保留）
+  private String historyDir;
+  private long historySegmentBytes = 64L << 20;
+  private int historyRetentionHours = 7 * 24;
+  // 每个聊天室在内存中保留、登录或加入时回放的最近消息条数，0 表示关闭
+  private int recentHistorySize = 50;
+  // 连接有待发送的帧后最多等待多久再一起写出（毫秒），0 表示在本轮事件循环结束时写出
+  private int writeCoalesceMillis = 1;
+  // users.json 和默认消息日志目录所在的目录，为空时使用 jar 包所在目录。
+  // 同一台机器上运行多个节点时每个节点需要各自的目录
+  private String dataDir;
+  // 集群：本节点名（为空时为 node-端口）、接收其他节点连接的端口（0 表示不接收）、
+  // 主动连接的节点列表 host:port,host:port、节点间的共享口令（启用集群时必填），
+  // 以及事件最多再转发几跳（0 表示全互联，每个节点直接连接其余所有节点）
+  private String nodeId;
+  private int clusterPort = 0;
+  private String clusterPeers;
+  private String clusterSecret;
+  private int clusterMaxHops = 0;
+  // 每个连接每秒可发送的消息数和字节数（<= 0 不限）及各自的突发上限；
+  // 字节突发上限至少为 maxLineBytes，否则最大的合法消息永远无法通过。
+  // 超限被拒绝超过 rateLimitMaxViolations 次（每秒恢复一次，<= 0 从不断开）后断开连接
+  private int rateLimitMessagesPerSecond = 20;
+  private int rateLimitMessageBurst = 40;
+  private int rateLimitBytesPerSecond = 256 << 10;
+  private int rateLimitByteBurst = 0;
+  private int rateLimitMaxViolations = 200;
+  // 连接空闲多少秒后服务端发送 ping（<= 0 关闭心跳和空闲回收），
+  // 多少秒内没有收到任何数据（包括 pong）就断开
+  private int pingIntervalSeconds = 30;
+  private int idleTimeoutSeconds = 90;
+
+  public static ServerConfig fromArgs(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (arg.startsWith("--") && eq > 2) {
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      }
+    }
+    ServerConfig config = new ServerConfig();
+    config.port = intOption(options, "port", config.port);
+    config.transport = TransportMode.valueOf(
+        option(options, "transport", config.transport.name())
+            .toUpperCase(Locale.ROOT));
+    config.ioThreads = intOption(options, "ioThreads", config.ioThreads);
+    config.maxLineBytes =
+        intOption(options, "maxLineBytes", config.maxLineBytes);
+    config.outboundQueueCapacity = intOption(options, "outboundQueueCapacity",
+                                             config.outboundQueueCapacity);
+    config.overflowPolicy = OverflowPolicy.valueOf(
+        option(options, "overflowPolicy", config.overflowPolicy.name())
+            .toUpperCase(Locale.ROOT));
+    config.binaryProtocol =
+        boolOption(options, "binaryProtocol", config.binaryProtocol);
+    config.compression =
+        boolOption(options, "compression", config.compression);
+    config.userLogCompactThreshold = intOption(
+        options, "userLogCompactThreshold", config.userLogCompactThreshold);
+    config.logMode = HotPathLog.Mode.valueOf(
+        option(options, "logMode", config.logMode.name())
+            .toUpperCase(Locale.ROOT));
+    config.logRateLimit =
+        intOption(options, "logRateLimit", config.logRateLimit);
+    config.metricsPort = intOption(options, "metricsPort", config.metricsPort);
+    config.historyDir = option(options, "historyDir", config.historyDir);
+    config.historySegmentBytes = Long.parseLong(option(
+        options, "historySegmentBytes",
+        String.valueOf(config.historySegmentBytes)));
+    config.historyRetentionHours = intOption(
+        options, "historyRetentionHours", config.historyRetentionHours);
+    config.recentHistorySize =
+        intOption(options, "recentHistorySize", config.recentHistorySize);
+    config.writeCoalesceMillis =
+        intOption(options, "writeCoalesceMillis", config.writeCoalesceMillis);
+    config.dataDir = option(options, "dataDir", config.dataDir);
+    config.nodeId = option(options, "nodeId", config.nodeId);
+    config.clusterPort =
+        intOption(options, "clusterPort", config.clusterPort);
+    config.clusterPeers = option(options, "clusterPeers", config.clusterPeers);
+    config.clusterSecret =
+        option(options, "clusterSecret", config.clusterSecret);
+    config.clusterMaxHops =
+        intOption(options, "clusterMaxHops", config.clusterMaxHops);
+    config.rateLimitMessagesPerSecond = intOption(
+        options, "rateLimitMessagesPerSecond",
+        config.rateLimitMessagesPerSecond);
+    config.rateLimitMessageBurst = intOption(
+        options, "rateLimitMessageBurst", config.rateLimitMessageBurst);
+    config.rateLimitBytesPerSecond = intOption(
+        options, "rateLimitBytesPerSecond", config.rateLimitBytesPerSecond);
+    config.rateLimitByteBurst =
+        intOption(options, "rateLimitByteBurst", config.rateLimitByteBurst);
+    config.rateLimitMaxViolations = intOption(
+        options, "rateLimitMaxViolations", config.rateLimitMaxViolations);
+    config.pingIntervalSeconds =
+        intOption(options, "pingIntervalSeconds", config.pingIntervalSeconds);
+    config.idleTimeoutSeconds =
+        intOption(options, "idleTimeoutSeconds", config.idleTimeoutSeconds);
+    return config;
+  }
+
+  private static String option(Map<String, String> options, String key,
+                               String defaultValue) {
+    String value = options.get(key);
+    if (value == null) {
+      value = System.getProperty("chatter." + key);
+    }
+    return value != null ? value.trim() : defaultValue;
+  }
+
+  private static int intOption(Map<String, String> options, String key,
+                               int defaultValue) {
+    return Integer.parseInt(
+        option(options, key, String.valueOf(defaultValue)));
+  }
+
+  private static boolean boolOption(Map<String, String> options, String key,
+                                    boolean defaultValue) {
+    return Boolean.parseBoolean(
+        option(options, key, String.valueOf(defaultValue)));
+  }
+
+  // Getters and Setters
+  public int getPort() { return port; }
+  public void setPort(int port) { this.port = port; }
+  public TransportMode getTransport() { return transport; }
+  public void setTransport(TransportMode transport) {
+    this.transport = transport;
+  }
+  public int getIoThreads() { return Math.max(1, ioThreads); }
+  public void setIoThreads(int ioThreads) { this.ioThreads = ioThreads; }
+  public int getMaxLineBytes() { return maxLineBytes; }
+  public void setMaxLineBytes(int maxLineBytes) {
+    this.maxLineBytes = maxLineBytes;
+  }
+  public int getOutboundQueueCapacity() { return outboundQueueCapacity; }
+  public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+    this.outboundQueueCapacity = outboundQueueCapacity;
+  }
+  public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+  public boolean isBinaryProtocol() { return binaryProtocol; }
+  public void setBinaryProtocol(boolean binaryProtocol) {
+    this.binaryProtocol = binaryProtocol;
+  }
+  public boolean isCompression() { return compression; }
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+  }
+  public int getUserLogCompactThreshold() { return userLogCompactThreshold; }
+  public void setUserLogCompactThreshold(int userLogCompactThreshold) {
+    this.userLogCompactThreshold = userLogCompactThreshold;
+  }
+  public HotPathLog.Mode getLogMode() { return logMode; }
+  public void setLogMode(HotPathLog.Mode logMode) { this.logMode = logMode; }
+  public int getLogRateLimit() { return logRateLimit; }
+  public void setLogRateLimit(int logRateLimit) {
+    this.logRateLimit = logRateLimit;
+  }
+  public int getMetricsPort() { return metricsPort; }
+  public void setMetricsPort(int metricsPort) { this.metricsPort = metricsPort; }
+  public String getHistoryDir() { return historyDir; }
+  public void setHistoryDir(String historyDir) { this.historyDir = historyDir; }
+  public long getHistorySegmentBytes() { return historySegmentBytes; }
+  public void setHistorySegmentBytes(long historySegmentBytes) {
+    this.historySegmentBytes = historySegmentBytes;
+  }
+  public int getHistoryRetentionHours() { return historyRetentionHours; }
+  public void setHistoryRetentionHours(int historyRetentionHours) {
+    this.historyRetentionHours = historyRetentionHours;
+  }
+  public int getRecentHistorySize() { return recentHistorySize; }
+  public void setRecentHistorySize(int recentHistorySize) {
+    this.recentHistorySize = recentHistorySize;
+  }
+  public int getWriteCoalesceMillis() {
+    return Math.max(0, writeCoalesceMillis);
+  }
+  public void setWriteCoalesceMillis(int writeCoalesceMillis) {
+    this.writeCoalesceMillis = writeCoalesceMillis;
+  }
+  public String getDataDir() { return dataDir; }
+  public void setDataDir(String dataDir) { this.dataDir = dataDir; }
+  public String getNodeId() {
+    return nodeId != null && !nodeId.isEmpty() ? nodeId : "node-" + port;
+  }
+  public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+  public int getClusterPort() { return clusterPort; }
+  public void setClusterPort(int clusterPort) { this.clusterPort = clusterPort; }
+  public String getClusterPeers() { return clusterPeers; }
+  public void setClusterPeers(String clusterPeers) {
+    this.clusterPeers = clusterPeers;
+  }
+  public String getClusterSecret() { return clusterSecret; }
+  public void setClusterSecret(String clusterSecret) {
+    this.clusterSecret = clusterSecret;
+  }
+  public int getClusterMaxHops() { return Math.max(0, clusterMaxHops); }
+  public void setClusterMaxHops(int clusterMaxHops) {
+    this.clusterMaxHops = clusterMaxHops;
+  }
+  public int getRateLimitMessagesPerSecond() {
+    return rateLimitMessagesPerSecond;
+  }
+  public void setRateLimitMessagesPerSecond(int rateLimitMessagesPerSecond) {
+    this.rateLimitMessagesPerSecond = rateLimitMessagesPerSecond;
+  }
+  public int getRateLimitMessageBurst() {
+    return Math.max(1, rateLimitMessageBurst);
+  }
+  public void setRateLimitMessageBurst(int rateLimitMessageBurst) {
+    this.rateLimitMessageBurst = rateLimitMessageBurst;
+  }
+  public int getRateLimitBytesPerSecond() { return rateLimitBytesPerSecond; }
+  public void setRateLimitBytesPerSecond(int rateLimitBytesPerSecond) {
+    this.rateLimitBytesPerSecond = rateLimitBytesPerSecond;
+  }
+  public int getRateLimitByteBurst() {
+    return Math.max(rateLimitByteBurst, maxLineBytes);
+  }
+  public void setRateLimitByteBurst(int rateLimitByteBurst) {
+    this.rateLimitByteBurst = rateLimitByteBurst;
+  }
+  public int getRateLimitMaxViolations() { return rateLimitMaxViolations; }
+  public void setRateLimitMaxViolations(int rateLimitMaxViolations) {
+    this.rateLimitMaxViolations = rateLimitMaxViolations;
+  }
+  public int getPingIntervalSeconds() { return pingIntervalSeconds; }
+  public void setPingIntervalSeconds(int pingIntervalSeconds) {
+    this.pingIntervalSeconds = pingIntervalSeconds;
+  }
+  // 至少留出一个 ping 周期等待 pong
+  public int getIdleTimeoutSeconds() {
+    return Math.max(idleTimeoutSeconds, 2 * pingIntervalSeconds);
+  }
+  public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+    this.idleTimeoutSeconds = idleTimeoutSeconds;
+  }
+  // 配置了监听端口或节点列表时启用集群
+  public boolean isClustered() {
+    return clusterPort > 0 ||
+        (clusterPeers != null && !clusterPeers.isBlank());
+  }
+}
@@ -0,0 +1,271 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.utils.HotPathLog;
+import com.example.chatterdemo.utils.LatencyHistogram;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// 服务端运行指标。热路径上只有 LongAdder 自增和直方图的一次原子自增；
+// 发送队列的丢弃数不在发送时统计，而是在抓取时汇总各连接队列上已有的计数
+final class ServerMetrics implements ServerMetricsMBean {
+  private final long startNanos = System.nanoTime();
+  private final AtomicInteger activeConnections = new AtomicInteger();
+  private final LongAdder connectionsAccepted = new LongAdder();
+  private final LongAdder messagesReceived = new LongAdder();
+  private final LongAdder directMessages = new LongAdder();
+  private final LongAdder broadcasts = new LongAdder();
+  private final LongAdder broadcastRecipients = new LongAdder();
+  private final LongAdder loginSuccesses = new LongAdder();
+  private final LongAdder loginFailures = new LongAdder();
+  private final LongAdder framesSent = new LongAdder();
+  // 套接字写调用次数和完整写出的帧数，两者之比反映写合并的效果
+  private final LongAdder socketWrites = new LongAdder();
+  private final LongAdder framesWritten = new LongAdder();
+  // 因限流被丢弃的消息和因持续刷屏被断开的连接
+  private final LongAdder rateLimited = new LongAdder();
+  private final LongAdder rateLimitDisconnects = new LongAdder();
+  // 心跳超时被回收的连接
+  private final LongAdder idleDisconnects = new LongAdder();
+  // 已关闭连接的队列丢弃数
+  private final LongAdder closedConnectionDrops = new LongAdder();
+  private final LatencyHistogram broadcastFanOut = new LatencyHistogram();
+  private final LatencyHistogram loginLatency = new LatencyHistogram();
+  private final IntSupplier onlineUsers;
+  private final LongSupplier liveConnectionDrops;
+  // 写日志队列已满而没有写入聊天记录的消息数
+  private final LongSupplier historyAppendsDropped;
+
+  // 每秒消息数按两次读取之间的增量计算，读取间隔不足一秒时沿用上次结果
+  private long rateSampleNanos = startNanos;
+  private long rateSampleCount;
+  private double messagesPerSecond;
+
+  ServerMetrics(IntSupplier onlineUsers, LongSupplier liveConnectionDrops,
+                LongSupplier historyAppendsDropped) {
+    this.onlineUsers = onlineUsers;
+    this.liveConnectionDrops = liveConnectionDrops;
+    this.historyAppendsDropped = historyAppendsDropped;
+  }
+
+  void connectionOpened() {
+    activeConnections.incrementAndGet();
+    connectionsAccepted.increment();
+  }
+
+  void connectionClosed(long queueDrops) {
+    activeConnections.decrementAndGet();
+    closedConnectionDrops.add(queueDrops);
+  }
+
+  void messageReceived() { messagesReceived.increment(); }
+
+  void frameSent() { framesSent.increment(); }
+
+  void socketWrite(int framesCompleted) {
+    socketWrites.increment();
+    framesWritten.add(framesCompleted);
+  }
+
+  void directMessage() { directMessages.increment(); }
+
+  void rateLimited() { rateLimited.increment(); }
+
+  void rateLimitDisconnect() { rateLimitDisconnects.increment(); }
+
+  void idleDisconnects(int closed) { idleDisconnects.add(closed); }
+
+  void broadcast(int recipients, long elapsedNanos) {
+    broadcasts.increment();
+    broadcastRecipients.add(recipients);
+    broadcastFanOut.recordNanos(elapsedNanos);
+  }
+
+  void login(boolean success, long elapsedNanos) {
+    if (success) {
+      loginSuccesses.increment();
+    } else {
+      loginFailures.increment();
+    }
+    loginLatency.recordNanos(elapsedNanos);
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  @Override
+  public long getUptimeSeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public int getActiveConnections() { return activeConnections.get(); }
+
+  @Override
+  public long getConnectionsAccepted() { return connectionsAccepted.sum(); }
+
+  @Override
+  public int getOnlineUsers() { return onlineUsers.getAsInt(); }
+
+  @Override
+  public long getMessagesReceived() { return messagesReceived.sum(); }
+
+  @Override
+  public synchronized double getMessagesPerSecond() {
+    long now = System.nanoTime();
+    long elapsed = now - rateSampleNanos;
+    if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+      long count = messagesReceived.sum();
+      messagesPerSecond = (count - rateSampleCount) * 1e9 / elapsed;
+      rateSampleNanos = now;
+      rateSampleCount = count;
+    }
+    return messagesPerSecond;
+  }
+
+  @Override
+  public long getDirectMessages() { return directMessages.sum(); }
+
+  @Override
+  public long getBroadcasts() { return broadcasts.sum(); }
+
+  @Override
+  public long getBroadcastRecipients() { return broadcastRecipients.sum(); }
+
+  @Override
+  public long getBroadcastFanOutP50Micros() {
+    return micros(broadcastFanOut.percentileNanos(50));
+  }
+
+  @Override
+  public long getBroadcastFanOutP99Micros() {
+    return micros(broadcastFanOut.percentileNanos(99));
+  }
+
+  @Override
+  public long getBroadcastFanOutMaxMicros() {
+    return micros(broadcastFanOut.maxNanos());
+  }
+
+  @Override
+  public long getLoginSuccesses() { return loginSuccesses.sum(); }
+
+  @Override
+  public long getLoginFailures() { return loginFailures.sum(); }
+
+  @Override
+  public long getLoginLatencyP50Micros() {
+    return micros(loginLatency.percentileNanos(50));
+  }
+
+  @Override
+  public long getLoginLatencyP99Micros() {
+    return micros(loginLatency.percentileNanos(99));
+  }
+
+  @Override
+  public long getLoginLatencyMaxMicros() {
+    return micros(loginLatency.maxNanos());
+  }
+
+  @Override
+  public long getFramesSent() { return framesSent.sum(); }
+
+  @Override
+  public long getSocketWrites() { return socketWrites.sum(); }
+
+  @Override
+  public long getFramesWritten() { return framesWritten.sum(); }
+
+  @Override
+  public double getFramesPerSocketWrite() {
+    long writes = socketWrites.sum();
+    return writes == 0 ? 0 : (double) framesWritten.sum() / writes;
+  }
+
+  @Override
+  public long getRateLimitedMessages() { return rateLimited.sum(); }
+
+  @Override
+  public long getRateLimitDisconnects() { return rateLimitDisconnects.sum(); }
+
+  @Override
+  public long getIdleDisconnects() { return idleDisconnects.sum(); }
+
+  @Override
+  public long getFramesDropped() {
+    return closedConnectionDrops.sum() + liveConnectionDrops.getAsLong();
+  }
+
+  @Override
+  public long getLogRecordsDropped() { return HotPathLog.droppedRecords(); }
+
+  @Override
+  public long getHistoryAppendsDropped() {
+    return historyAppendsDropped.getAsLong();
+  }
+
+  // Prometheus 文本格式：计数器以 _total 结尾，直方图输出分位数、样本数和总和
+  @Override
+  public String scrape() {
+    StringBuilder out = new StringBuilder(2048);
+    gauge(out, "chatter_uptime_seconds", getUptimeSeconds());
+    gauge(out, "chatter_connections_active", getActiveConnections());
+    counter(out, "chatter_connections_accepted_total",
+            getConnectionsAccepted());
+    gauge(out, "chatter_users_online", getOnlineUsers());
+    counter(out, "chatter_messages_received_total", getMessagesReceived());
+    out.append("# TYPE chatter_messages_per_second gauge\n")
+        .append("chatter_messages_per_second ")
+        .append(String.format(Locale.ROOT, "%.2f", getMessagesPerSecond()))
+        .append('\n');
+    counter(out, "chatter_direct_messages_total", getDirectMessages());
+    counter(out, "chatter_rate_limited_messages_total",
+            getRateLimitedMessages());
+    counter(out, "chatter_rate_limit_disconnects_total",
+            getRateLimitDisconnects());
+    counter(out, "chatter_idle_disconnects_total", getIdleDisconnects());
+    counter(out, "chatter_broadcasts_total", getBroadcasts());
+    counter(out, "chatter_broadcast_recipients_total",
+            getBroadcastRecipients());
+    summary(out, "chatter_broadcast_fanout_seconds", broadcastFanOut);
+    counter(out, "chatter_logins_succeeded_total", getLoginSuccesses());
+    counter(out, "chatter_logins_failed_total", getLoginFailures());
+    summary(out, "chatter_login_latency_seconds", loginLatency);
+    counter(out, "chatter_frames_sent_total", getFramesSent());
+    counter(out, "chatter_frames_dropped_total", getFramesDropped());
+    counter(out, "chatter_socket_writes_total", getSocketWrites());
+    counter(out, "chatter_frames_written_total", getFramesWritten());
+    counter(out, "chatter_log_records_dropped_total", getLogRecordsDropped());
+    counter(out, "chatter_history_appends_dropped_total",
+            getHistoryAppendsDropped());
+    return out.toString();
+  }
+
+  private static void counter(StringBuilder out, String name, long value) {
+    out.append("# TYPE ").append(name).append(" counter\n")
+        .append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void gauge(StringBuilder out, String name, long value) {
+    out.append("# TYPE ").append(name).append(" gauge\n")
+        .append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void summary(StringBuilder out, String name,
+                              LatencyHistogram histogram) {
+    out.append("# TYPE ").append(name).append(" summary\n");
+    for (double q : new double[] {0.5, 0.9, 0.99, 0.999}) {
+      out.append(name).append("{quantile=\"").append(q).append("\"} ")
+          .append(histogram.percentileNanos(q * 100) / 1e9).append('\n');
+    }
+    long count = histogram.count();
+    out.append(name).append("_sum ")
+        .append(histogram.meanNanos() * count / 1e9).append('\n');
+    out.append(name).append("_count ").append(count).append('\n');
+  }
+}
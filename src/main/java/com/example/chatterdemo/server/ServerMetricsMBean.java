@@ -0,0 +1,35 @@
+package com.example.chatterdemo.server;
+
+// 通过 JMX 暴露的服务端指标；延迟单位为微秒
+public interface ServerMetricsMBean {
+  long getUptimeSeconds();
+  int getActiveConnections();
+  long getConnectionsAccepted();
+  int getOnlineUsers();
+  long getMessagesReceived();
+  double getMessagesPerSecond();
+  long getDirectMessages();
+  long getRateLimitedMessages();
+  long getRateLimitDisconnects();
+  long getIdleDisconnects();
+  long getBroadcasts();
+  long getBroadcastRecipients();
+  long getBroadcastFanOutP50Micros();
+  long getBroadcastFanOutP99Micros();
+  long getBroadcastFanOutMaxMicros();
+  long getLoginSuccesses();
+  long getLoginFailures();
+  long getLoginLatencyP50Micros();
+  long getLoginLatencyP99Micros();
+  long getLoginLatencyMaxMicros();
+  long getFramesSent();
+  long getFramesDropped();
+  long getSocketWrites();
+  long getFramesWritten();
+  double getFramesPerSocketWrite();
+  long getLogRecordsDropped();
+  long getHistoryAppendsDropped();
+
+  // 与文本抓取端点输出相同的内容
+  String scrape();
+}
@@ -0,0 +1,10 @@
+package com.example.chatterdemo.server;
+
+import java.io.IOException;
+
+interface Transport {
+  // 接受并处理连接，阻塞直到 stop 被调用或监听通道被关闭
+  void serve() throws IOException;
+
+  void stop();
+}
@@ -0,0 +1,8 @@
+package com.example.chatterdemo.server;
+
+// 不可变的账户记录：两个字段直接存引用，登录校验不再经过 Gson 树
+record UserAccount(String password, String nickname) {
+  boolean passwordMatches(String candidate) {
+    return password.equals(candidate);
+  }
+}
@@ -0,0 +1,43 @@
+package com.example.chatterdemo.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 用户名 -> 账户的内存目录，所有方法都可并发调用
+final class UserDirectory {
+  private final Map<String, UserAccount> accounts = new ConcurrentHashMap<>();
+
+  UserAccount lookup(String username) {
+    return accounts.get(username);
+  }
+
+  // 用户名已存在时返回 false，不覆盖
+  boolean insert(String username, UserAccount account) {
+    return accounts.putIfAbsent(username, account) == null;
+  }
+
+  // 加载时使用，后出现的记录覆盖先前的
+  void put(String username, UserAccount account) {
+    accounts.put(username, account);
+  }
+
+  // 仅当仍是同一条记录时才删除
+  void remove(String username, UserAccount account) {
+    accounts.remove(username, account);
+  }
+
+  // 弱一致的只读视图，遍历期间的并发插入可能可见也可能不可见
+  Set<Map.Entry<String, UserAccount>> entries() {
+    return Collections.unmodifiableSet(accounts.entrySet());
+  }
+
+  int size() {
+    return accounts.size();
+  }
+
+  void clear() {
+    accounts.clear();
+  }
+}
@@ -0,0 +1,336 @@
+package com.example.chatterdemo.server;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 用户数据持久化：快照文件 users.json（格式与旧版相同）+ 追加写的变更日志 users.log。
+// 注册只追加一行日志，由后台线程批量写入并统一 fsync（group commit），与用户总数无关；
+// 日志超过阈值后切换到新文件，由另一个线程把内存中的用户表写成新快照后删除旧日志
+final class UserStore {
+  private static final Logger logger =
+      Logger.getLogger(UserStore.class.getName());
+
+  private final Path snapshotPath;
+  private final Path logPath;
+  private final Path compactingLogPath; // 正在被合并进快照的旧日志
+  private final UserDirectory users;
+  private final int compactThreshold;
+  private final BlockingQueue<PendingWrite> pending =
+      new LinkedBlockingQueue<>();
+  private final Object compactionLock = new Object();
+  private FileChannel log; // 仅在写线程访问
+  private int recordsSinceSnapshot;
+  private Thread writer;
+  private Thread compactor;
+  // closed 与入队在同一把锁内判断，关闭标记之后不会再有记录入队
+  private final Object appendLock = new Object();
+  private boolean closed;
+  // 关闭时放入队列，写线程处理完它之前的记录后退出。
+  // 不用 interrupt：FileChannel 在被中断时会直接关闭
+  private final PendingWrite shutdownMarker = new PendingWrite("");
+
+  private static final class PendingWrite {
+    final String record;
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    PendingWrite(String record) { this.record = record; }
+  }
+
+  UserStore(Path snapshotPath, UserDirectory users,
+            int compactThreshold) {
+    this.snapshotPath = snapshotPath;
+    this.logPath = snapshotPath.resolveSibling("users.log");
+    this.compactingLogPath = snapshotPath.resolveSibling("users.log.compacting");
+    this.users = users;
+    this.compactThreshold = Math.max(1, compactThreshold);
+  }
+
+  boolean exists() {
+    return Files.exists(snapshotPath) || Files.exists(logPath) ||
+        Files.exists(compactingLogPath);
+  }
+
+  // 依次重放快照、未完成合并的旧日志和当前日志；重复写入同一用户以后出现的为准
+  void load() throws IOException {
+    users.clear();
+    if (Files.exists(snapshotPath)) {
+      readSnapshot();
+    }
+    int replayed = replay(compactingLogPath) + replay(logPath);
+    recordsSinceSnapshot = replayed;
+    logger.info("Loaded " + users.size() + " users from " + snapshotPath +
+                " (" + replayed + " log records replayed)");
+  }
+
+  private void readSnapshot() throws IOException {
+    try (JsonReader reader = new JsonReader(
+             Files.newBufferedReader(snapshotPath, StandardCharsets.UTF_8))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String username = reader.nextName();
+        users.put(username, readAccount(reader, null));
+      }
+      reader.endObject();
+    } catch (IllegalStateException e) {
+      throw new IOException("Corrupt user snapshot " + snapshotPath, e);
+    }
+  }
+
+  private int replay(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    int count = 0;
+    try (BufferedReader reader =
+             Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank()) {
+          continue;
+        }
+        try (JsonReader record = new JsonReader(new StringReader(line))) {
+          String[] username = new String[1];
+          UserAccount account = readAccount(record, username);
+          users.put(username[0], account);
+          count++;
+        } catch (IOException | RuntimeException e) {
+          // 崩溃时最后一行可能只写了一半，之前的记录都已 fsync
+          logger.warning("Skipping unreadable user log record in " + path);
+        }
+      }
+    }
+    return count;
+  }
+
+  // 读取 {"password":..,"nickname":..}；日志记录里的 username 通过 usernameOut 带回，op 等其余字段跳过
+  private static UserAccount readAccount(JsonReader reader,
+                                         String[] usernameOut)
+      throws IOException {
+    String password = null;
+    String nickname = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+      case "password":
+        password = reader.nextString();
+        break;
+      case "nickname":
+        nickname = reader.nextString();
+        break;
+      case "username":
+        if (usernameOut != null) {
+          usernameOut[0] = reader.nextString();
+          break;
+        }
+        reader.skipValue();
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (password == null || nickname == null ||
+        (usernameOut != null && usernameOut[0] == null)) {
+      throw new IllegalStateException("Incomplete user record");
+    }
+    return new UserAccount(password, nickname);
+  }
+
+  private static void writeAccount(JsonWriter writer, UserAccount account)
+      throws IOException {
+    writer.name("password").value(account.password());
+    writer.name("nickname").value(account.nickname());
+  }
+
+  void start() throws IOException {
+    log = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                           StandardOpenOption.WRITE,
+                           StandardOpenOption.APPEND);
+    writer = new Thread(this::writeLoop, "user-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  // 返回的 future 在记录 fsync 之后完成
+  CompletableFuture<Void> append(String username, UserAccount account) {
+    StringWriter record = new StringWriter();
+    try (JsonWriter json = new JsonWriter(record)) {
+      json.beginObject();
+      json.name("op").value("put");
+      json.name("username").value(username);
+      writeAccount(json, account);
+      json.endObject();
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    PendingWrite write = new PendingWrite(record + "\n");
+    synchronized (appendLock) {
+      if (!closed) {
+        pending.add(write);
+        return write.done;
+      }
+    }
+    write.done.completeExceptionally(new IOException("User store is closed"));
+    return write.done;
+  }
+
+  private void writeLoop() {
+    List<PendingWrite> batch = new ArrayList<>();
+    boolean stopping = false;
+    while (!stopping) {
+      try {
+        batch.add(pending.take());
+      } catch (InterruptedException e) {
+        continue;
+      }
+      pending.drainTo(batch);
+      stopping = batch.remove(shutdownMarker);
+      if (!batch.isEmpty()) {
+        writeBatch(batch);
+      }
+      batch.clear();
+    }
+  }
+
+  private void writeBatch(List<PendingWrite> batch) {
+    try {
+      StringBuilder records = new StringBuilder();
+      for (PendingWrite write : batch) {
+        records.append(write.record);
+      }
+      ByteBuffer buf =
+          ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+      while (buf.hasRemaining()) {
+        log.write(buf);
+      }
+      log.force(false);
+      for (PendingWrite write : batch) {
+        write.done.complete(null);
+      }
+      recordsSinceSnapshot += batch.size();
+      if (recordsSinceSnapshot >= compactThreshold) {
+        rotate();
+      }
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Error appending to user log", e);
+      for (PendingWrite write : batch) {
+        write.done.completeExceptionally(e);
+      }
+    }
+  }
+
+  // 写线程调用：上一次合并尚未结束时不切换，日志继续增长。
+  // 上次崩溃或合并失败留下的旧日志先在这里合并掉，合并不了也不切换，不能覆盖它
+  private void rotate() throws IOException {
+    synchronized (compactionLock) {
+      if (compactor != null && compactor.isAlive()) {
+        return;
+      }
+      if (Files.exists(compactingLogPath) && !compact()) {
+        return;
+      }
+      log.close();
+      Files.move(logPath, compactingLogPath,
+                 StandardCopyOption.REPLACE_EXISTING);
+      log = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE,
+                             StandardOpenOption.APPEND);
+      recordsSinceSnapshot = 0;
+      compactor = new Thread(this::compact, "user-log-compactor");
+      compactor.setDaemon(true);
+      compactor.start();
+    }
+  }
+
+  // 切换之前日志里的用户都已在内存表中，写完快照即可删除旧日志。
+  // 失败时旧日志保留，下次切换前或重启加载时还会用到
+  private boolean compact() {
+    try {
+      writeSnapshot();
+      Files.deleteIfExists(compactingLogPath);
+      return true;
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Error compacting user log", e);
+      return false;
+    }
+  }
+
+  // 先写临时文件并 fsync，再原子替换，任何时刻崩溃都不会留下半个快照
+  void writeSnapshot() throws IOException {
+    Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+    int count = 0;
+    try (FileChannel channel = FileChannel.open(
+             tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      Writer out = new BufferedWriter(new OutputStreamWriter(
+          Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+      JsonWriter json = new JsonWriter(out);
+      json.beginObject();
+      for (Map.Entry<String, UserAccount> entry : users.entries()) {
+        json.name(entry.getKey()).beginObject();
+        writeAccount(json, entry.getValue());
+        json.endObject();
+        count++;
+      }
+      json.endObject();
+      json.flush();
+      channel.force(true);
+    }
+    Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+    logger.info("Saved " + count + " users to " + snapshotPath);
+  }
+
+  // 等待所有待写记录落盘，然后写一次完整快照并清空日志
+  void close() {
+    synchronized (appendLock) {
+      closed = true;
+      if (writer != null) {
+        pending.add(shutdownMarker);
+      }
+    }
+    try {
+      if (writer != null) {
+        writer.join();
+      }
+      synchronized (compactionLock) {
+        if (compactor != null) {
+          compactor.join();
+        }
+      }
+      if (log != null) {
+        log.close();
+      }
+      writeSnapshot();
+      Files.deleteIfExists(compactingLogPath);
+      Files.deleteIfExists(logPath);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Error saving users to file", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
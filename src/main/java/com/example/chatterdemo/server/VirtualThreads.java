@@ -0,0 +1,29 @@
+package com.example.chatterdemo.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 默认按 release 17 编译，这里通过 MethodHandle 查找 JDK 21 的虚拟线程 API，
+// 同一份构建产物在旧 JDK 上仍可使用其他传输模式
+final class VirtualThreads {
+  private VirtualThreads() {}
+
+  static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      MethodHandle factory = MethodHandles.publicLookup().findStatic(
+          Executors.class, "newVirtualThreadPerTaskExecutor",
+          MethodType.methodType(ExecutorService.class));
+      return (ExecutorService)factory.invoke();
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(
+          "Virtual threads require JDK 21 or newer, running on " +
+          Runtime.version());
+    } catch (Throwable e) {
+      throw new IllegalStateException("Failed to create virtual thread executor",
+                                      e);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.example.chatterdemo.server;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.BinaryCodec;
+import com.example.chatterdemo.utils.MessageJsonCodec;
+import java.nio.charset.StandardCharsets;
+
+// 连接协商出的出站编码格式
+enum WireFormat {
+  JSON {
+    @Override
+    Frame encode(Message message) {
+      return Frame.encode(MessageJsonCodec.encode(message));
+    }
+
+    @Override
+    byte[] encodeBytes(Message message) {
+      return (MessageJsonCodec.encode(message) + "\n")
+          .getBytes(StandardCharsets.UTF_8);
+    }
+  },
+  BINARY {
+    @Override
+    Frame encode(Message message) {
+      return Frame.wrap(BinaryCodec.encodeFrame(message));
+    }
+
+    @Override
+    byte[] encodeBytes(Message message) {
+      return BinaryCodec.encodeFrame(message);
+    }
+  },
+  // 二进制帧，较大的消息体逐帧压缩
+  BINARY_DEFLATE {
+    @Override
+    Frame encode(Message message) {
+      return Frame.wrap(BinaryCodec.encodeFrame(message, true));
+    }
+
+    @Override
+    byte[] encodeBytes(Message message) {
+      return BinaryCodec.encodeFrame(message, true);
+    }
+  };
+
+  abstract Frame encode(Message message);
+
+  // 编码为堆上的完整帧字节，用于需要长期缓存的场合
+  abstract byte[] encodeBytes(Message message);
+}
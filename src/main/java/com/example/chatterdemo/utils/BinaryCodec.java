@@ -0,0 +1,300 @@
+package com.example.chatterdemo.utils;
+
+import com.example.chatterdemo.model.Message;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// 紧凑二进制编码：帧 = varint 长度 + 消息体；
+// 消息体 = 类型标签字节 [+ 未知类型的字符串] + varint 字段位图 + 各非空字段（varint 长度 + UTF-8）。
+// 协商了 COMPRESSED_PROTOCOL 的连接上，超过阈值的消息体可以整体压缩：
+// 消息体 = COMPRESSED 标签字节 + varint 原始消息体长度 + zlib 数据。每帧独立压缩，
+// 同一个压缩帧可以发给所有协商了压缩的接收者
+public final class BinaryCodec {
+  public static final String PROTOCOL = "binary/1";
+  public static final String COMPRESSED_PROTOCOL = "binary/1+deflate";
+  public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+  // 消息体达到这个字节数才尝试压缩，更小的消息压缩收益抵不上 CPU 开销
+  public static final int COMPRESSION_THRESHOLD = 1024;
+
+  // 下标即标签值，0 表示类型不在表中，后面紧跟类型字符串
+  private static final String[] TYPES = {
+      null,    "login", "register", "message", "logout", "system",
+      "error", "hello", "join",     "leave",   "direct", "history",
+      "ping",  "pong"};
+  private static final int NICKNAME = 1;
+  private static final int TEXT = 1 << 1;
+  private static final int STATUS = 1 << 2;
+  private static final int MESSAGE = 1 << 3;
+  private static final int ROOM = 1 << 4;
+  private static final int CURSOR = 1 << 5;
+  private static final int COMPRESSED = 0x7f;
+
+  // Deflater/Inflater 创建代价高（持有本地 zlib 状态），每个线程复用一个
+  private static final ThreadLocal<Deflater> DEFLATER =
+      ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+  private static final ThreadLocal<Inflater> INFLATER =
+      ThreadLocal.withInitial(Inflater::new);
+
+  private BinaryCodec() {}
+
+  // 编码为带长度前缀的完整帧
+  public static byte[] encodeFrame(Message message) {
+    int tag = tagOf(message.getType());
+    byte[] type = tag == 0 ? utf8(message.getType()) : null;
+    byte[] nickname = utf8(message.getNickname());
+    byte[] text = utf8(message.getText());
+    byte[] status = utf8(message.getStatus());
+    byte[] extra = utf8(message.getMessage());
+    byte[] room = utf8(message.getRoom());
+    byte[] cursor = utf8(message.getCursor());
+    int mask = (nickname != null ? NICKNAME : 0) | (text != null ? TEXT : 0) |
+               (status != null ? STATUS : 0) | (extra != null ? MESSAGE : 0) |
+               (room != null ? ROOM : 0) | (cursor != null ? CURSOR : 0);
+    int bodyLength = 1 + fieldSize(type) + varintSize(mask) +
+                     fieldSize(nickname) + fieldSize(text) +
+                     fieldSize(status) + fieldSize(extra) + fieldSize(room) +
+                     fieldSize(cursor);
+    byte[] out = new byte[varintSize(bodyLength) + bodyLength];
+    int pos = writeVarint(out, 0, bodyLength);
+    out[pos++] = (byte)tag;
+    pos = writeField(out, pos, type);
+    pos = writeVarint(out, pos, mask);
+    pos = writeField(out, pos, nickname);
+    pos = writeField(out, pos, text);
+    pos = writeField(out, pos, status);
+    pos = writeField(out, pos, extra);
+    pos = writeField(out, pos, room);
+    writeField(out, pos, cursor);
+    return out;
+  }
+
+  // compress 为 true 且消息体不小于阈值时返回压缩帧；压缩后没有变小则返回原始帧
+  public static byte[] encodeFrame(Message message, boolean compress) {
+    byte[] frame = encodeFrame(message);
+    if (!compress || frame.length < COMPRESSION_THRESHOLD) {
+      return frame;
+    }
+    int bodyOffset = 0;
+    while ((frame[bodyOffset++] & 0x80) != 0) {
+    }
+    int bodyLength = frame.length - bodyOffset;
+    Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    deflater.setInput(frame, bodyOffset, bodyLength);
+    deflater.finish();
+    // 压缩结果必须比原文短，输出缓冲区放不下说明不值得压缩
+    byte[] deflated = new byte[bodyLength];
+    int deflatedLength = deflater.deflate(deflated);
+    if (!deflater.finished()) {
+      return frame;
+    }
+    int compressedBody = 1 + varintSize(bodyLength) + deflatedLength;
+    if (varintSize(compressedBody) + compressedBody >= frame.length) {
+      return frame;
+    }
+    byte[] out = new byte[varintSize(compressedBody) + compressedBody];
+    int pos = writeVarint(out, 0, compressedBody);
+    out[pos++] = (byte)COMPRESSED;
+    pos = writeVarint(out, pos, bodyLength);
+    System.arraycopy(deflated, 0, out, pos, deflatedLength);
+    return out;
+  }
+
+  // 解码不含长度前缀的消息体，格式错误时抛出 IllegalArgumentException
+  public static Message decode(byte[] buf, int offset, int length) {
+    return decode(buf, offset, length, MAX_FRAME_BYTES);
+  }
+
+  public static boolean isCompressed(byte[] buf, int offset, int length) {
+    return length > 0 && (buf[offset] & 0xff) == COMPRESSED;
+  }
+
+  // 消息体解码后的字节数：压缩帧取头部声明的原始长度（与实际不符时 decode 会拒绝），
+  // 头部无法解析时返回帧本身的长度
+  public static int decodedLength(byte[] buf, int offset, int length) {
+    if (!isCompressed(buf, offset, length)) {
+      return length;
+    }
+    try {
+      int bodyLength = new Reader(buf, offset + 1, offset + length).readVarint();
+      return bodyLength > 0 ? Math.max(bodyLength, length) : length;
+    } catch (IllegalArgumentException e) {
+      return length;
+    }
+  }
+
+  // maxInflatedBytes 限制压缩帧解压后的大小
+  public static Message decode(byte[] buf, int offset, int length,
+                               int maxInflatedBytes) {
+    if (isCompressed(buf, offset, length)) {
+      byte[] body = inflate(buf, offset + 1, length - 1, maxInflatedBytes);
+      return decodeBody(body, 0, body.length);
+    }
+    return decodeBody(buf, offset, length);
+  }
+
+  private static byte[] inflate(byte[] buf, int offset, int length,
+                                int maxInflatedBytes) {
+    Reader reader = new Reader(buf, offset, offset + length);
+    int bodyLength = reader.readVarint();
+    if (bodyLength <= 0 || bodyLength > maxInflatedBytes) {
+      throw new IllegalArgumentException("Invalid inflated length " +
+                                         bodyLength);
+    }
+    Inflater inflater = INFLATER.get();
+    inflater.reset();
+    inflater.setInput(buf, reader.pos, offset + length - reader.pos);
+    byte[] body = new byte[bodyLength];
+    try {
+      if (inflater.inflate(body) != bodyLength || !inflater.finished()) {
+        throw new IllegalArgumentException("Corrupt compressed message");
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Corrupt compressed message", e);
+    }
+    return body;
+  }
+
+  private static Message decodeBody(byte[] buf, int offset, int length) {
+    Reader reader = new Reader(buf, offset, offset + length);
+    Message message = new Message();
+    int tag = reader.readByte();
+    if (tag == 0) {
+      message.setType(reader.readString());
+    } else if (tag < TYPES.length) {
+      message.setType(TYPES[tag]);
+    } else {
+      throw new IllegalArgumentException("Unknown type tag " + tag);
+    }
+    int mask = reader.readVarint();
+    if ((mask & NICKNAME) != 0)
+      message.setNickname(reader.readString());
+    if ((mask & TEXT) != 0)
+      message.setText(reader.readString());
+    if ((mask & STATUS) != 0)
+      message.setStatus(reader.readString());
+    if ((mask & MESSAGE) != 0)
+      message.setMessage(reader.readString());
+    if ((mask & ROOM) != 0)
+      message.setRoom(reader.readString());
+    if ((mask & CURSOR) != 0)
+      message.setCursor(reader.readString());
+    return message;
+  }
+
+  // 从阻塞流读取一帧，流结束时返回 null
+  public static Message readFrame(InputStream in) throws IOException {
+    int length = 0;
+    for (int shift = 0;; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        if (shift == 0)
+          return null;
+        throw new EOFException("Truncated frame length");
+      }
+      if (shift > 28) {
+        throw new IOException("Malformed frame length");
+      }
+      length |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+        break;
+    }
+    if (length <= 0 || length > MAX_FRAME_BYTES) {
+      throw new IOException("Invalid frame length " + length);
+    }
+    byte[] body = in.readNBytes(length);
+    if (body.length < length) {
+      throw new EOFException("Truncated frame");
+    }
+    try {
+      return decode(body, 0, length);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Malformed frame", e);
+    }
+  }
+
+  private static int tagOf(String type) {
+    for (int i = 1; i < TYPES.length; i++) {
+      if (TYPES[i].equals(type))
+        return i;
+    }
+    return 0;
+  }
+
+  private static byte[] utf8(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int fieldSize(byte[] value) {
+    return value == null ? 0 : varintSize(value.length) + value.length;
+  }
+
+  private static int writeField(byte[] out, int pos, byte[] value) {
+    if (value == null)
+      return pos;
+    pos = writeVarint(out, pos, value.length);
+    System.arraycopy(value, 0, out, pos, value.length);
+    return pos + value.length;
+  }
+
+  private static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static int writeVarint(byte[] out, int pos, int value) {
+    while ((value & ~0x7f) != 0) {
+      out[pos++] = (byte)((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out[pos++] = (byte)value;
+    return pos;
+  }
+
+  private static final class Reader {
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+
+    Reader(byte[] buf, int pos, int limit) {
+      this.buf = buf;
+      this.pos = pos;
+      this.limit = limit;
+    }
+
+    int readByte() {
+      if (pos >= limit)
+        throw new IllegalArgumentException("Truncated message");
+      return buf[pos++] & 0xff;
+    }
+
+    int readVarint() {
+      int value = 0;
+      for (int shift = 0; shift <= 28; shift += 7) {
+        int b = readByte();
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0)
+          return value;
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+
+    String readString() {
+      int length = readVarint();
+      if (length < 0 || length > limit - pos)
+        throw new IllegalArgumentException("Truncated string");
+      String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+      pos += length;
+      return value;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package com.example.chatterdemo.utils;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// 消息热路径（每条收发消息都会经过）的日志：先按级别过滤，再按每秒条数限流，
+// 字符串拼接和 handler I/O 都推迟到后台线程。队列满或超出限流的记录直接丢弃并计数，
+// 调用线程不会阻塞在日志上。模式和限流默认取 -Dchatter.logMode / -Dchatter.logRateLimit
+public final class HotPathLog {
+  // SYNC 在调用线程写出（仍然限流、延迟拼接），ASYNC 交给后台线程，OFF 全部丢弃
+  public enum Mode { SYNC, ASYNC, OFF }
+
+  private static final Logger logger =
+      Logger.getLogger(HotPathLog.class.getName());
+  private static final int QUEUE_CAPACITY = 8192;
+
+  private static volatile Mode mode =
+      parseMode(System.getProperty("chatter.logMode"));
+  private static volatile int maxPerSecond =
+      Integer.getInteger("chatter.logRateLimit", 1000);
+
+  private static final BlockingQueue<Runnable> queue =
+      new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private static final LongAdder dropped = new LongAdder();
+  private static final AtomicLong windowSecond = new AtomicLong();
+  private static final AtomicInteger windowCount = new AtomicInteger();
+
+  static {
+    Thread writer = new Thread(HotPathLog::drain, "hot-path-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private HotPathLog() {}
+
+  // 属性写错时不能让类初始化失败（之后每次调用都会抛 NoClassDefFoundError），退回 ASYNC
+  private static Mode parseMode(String value) {
+    if (value == null) {
+      return Mode.ASYNC;
+    }
+    try {
+      return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      logger.warning("Unknown chatter.logMode '" + value +
+                     "', using ASYNC (expected sync, async or off)");
+      return Mode.ASYNC;
+    }
+  }
+
+  // maxPerSecond <= 0 表示不限流
+  public static void configure(Mode mode, int maxPerSecond) {
+    HotPathLog.mode = mode;
+    HotPathLog.maxPerSecond = maxPerSecond;
+  }
+
+  public static Mode mode() { return mode; }
+
+  // 因限流或队列满而丢弃的记录总数
+  public static long droppedRecords() { return dropped.sum(); }
+
+  public static void log(Logger target, Level level,
+                         Supplier<String> message) {
+    Mode current = mode;
+    if (current == Mode.OFF || !target.isLoggable(level) || !admit()) {
+      return;
+    }
+    if (current == Mode.SYNC) {
+      target.log(level, message);
+      return;
+    }
+    // 后台线程推断不出调用位置，用 logger 名作为来源
+    String source = target.getName();
+    enqueue(() -> target.logp(level, source, null, message.get()));
+  }
+
+  // 客户端的控制台输出走同样的限流与异步路径
+  public static void print(PrintStream out, Supplier<String> message) {
+    Mode current = mode;
+    if (current == Mode.OFF || !admit()) {
+      return;
+    }
+    if (current == Mode.SYNC) {
+      out.println(message.get());
+      return;
+    }
+    enqueue(() -> out.println(message.get()));
+  }
+
+  // 以秒为窗口的计数限流；窗口切换时的竞争最多多放行几条，可以接受
+  private static boolean admit() {
+    int limit = maxPerSecond;
+    if (limit <= 0) {
+      return true;
+    }
+    long second = System.nanoTime() / 1_000_000_000L;
+    long window = windowSecond.get();
+    if (second != window && windowSecond.compareAndSet(window, second)) {
+      windowCount.set(0);
+    }
+    if (windowCount.incrementAndGet() > limit) {
+      dropped.increment();
+      return false;
+    }
+    return true;
+  }
+
+  private static void enqueue(Runnable record) {
+    if (!queue.offer(record)) {
+      dropped.increment();
+    }
+  }
+
+  // 后台写出线程；每秒最多报告一次新增的丢弃数
+  private static void drain() {
+    long reported = 0;
+    long lastReport = System.nanoTime();
+    while (true) {
+      try {
+        Runnable record = queue.poll(1, TimeUnit.SECONDS);
+        if (record != null) {
+          record.run();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Error writing log record", e);
+      }
+      long now = System.nanoTime();
+      if (now - lastReport >= TimeUnit.SECONDS.toNanos(1)) {
+        long total = dropped.sum();
+        if (total != reported) {
+          logger.warning((total - reported) + " log records dropped");
+          reported = total;
+        }
+        lastReport = now;
+      }
+    }
+  }
+}
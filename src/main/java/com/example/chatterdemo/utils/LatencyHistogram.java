@@ -0,0 +1,77 @@
+package com.example.chatterdemo.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 对数-线性分桶的延迟直方图（与 HdrHistogram 的分桶方式相同）：每个 2 的幂区间再均分为
+// 32 个子桶，相对误差约 3%。记录不加锁：桶计数一次原子自增，样本数和总和用 LongAdder
+// （各线程分散累加，几乎不争用），最大值先读一次，只有刷新时才 CAS；
+// 读取得到的是近似一致的快照
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public void recordNanos(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(indexOf(value));
+    total.increment();
+    sum.add(value);
+    long current;
+    while (value > (current = max.get()) &&
+           !max.compareAndSet(current, value)) {
+    }
+  }
+
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS * (shift + 1) + sub;
+  }
+
+  // 桶内最大值，用于报告分位数（偏保守）
+  private static long highestValueIn(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long sub = index % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+  }
+
+  public long count() { return total.sum(); }
+
+  public long maxNanos() { return max.get(); }
+
+  public double meanNanos() {
+    long n = total.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  // percentile 取 0-100；没有样本时返回 0
+  public long percentileNanos(double percentile) {
+    long n = total.sum();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueIn(i), max.get());
+      }
+    }
+    return max.get();
+  }
+}
@@ -0,0 +1,114 @@
+package com.example.chatterdemo.utils;
+
+import com.example.chatterdemo.model.Message;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+// 基于 JsonReader/JsonWriter 的 Message 流式编解码，直接绑定字段，
+// 不构建 JsonObject 树，也不经过 Gson 的反射适配器。服务端和客户端共用
+public final class MessageJsonCodec {
+  private MessageJsonCodec() {}
+
+  // 空串或 null 字面量返回 null，与 Gson.fromJson 行为一致
+  public static Message decode(String json) {
+    return decode(json, new Message());
+  }
+
+  // 解码到调用方复用的实例中，原有字段会被清空
+  public static Message decode(String json, Message target) {
+    if (json.isBlank()) {
+      return null;
+    }
+    try (JsonReader reader = new JsonReader(new StringReader(json))) {
+      reader.setLenient(true);
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+      target.setType(null);
+      target.setNickname(null);
+      target.setText(null);
+      target.setStatus(null);
+      target.setMessage(null);
+      target.setRoom(null);
+      target.setCursor(null);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        switch (name) {
+        case "type":
+          target.setType(readString(reader));
+          break;
+        case "nickname":
+          target.setNickname(readString(reader));
+          break;
+        case "text":
+          target.setText(readString(reader));
+          break;
+        case "status":
+          target.setStatus(readString(reader));
+          break;
+        case "message":
+          target.setMessage(readString(reader));
+          break;
+        case "room":
+          target.setRoom(readString(reader));
+          break;
+        case "cursor":
+          target.setCursor(readString(reader));
+          break;
+        default:
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return target;
+    } catch (IOException | IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  private static String readString(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+    case NULL:
+      reader.nextNull();
+      return null;
+    case BOOLEAN:
+      return Boolean.toString(reader.nextBoolean());
+    default:
+      // STRING 和 NUMBER 都按字符串读取，其他类型由 JsonReader 抛出异常
+      return reader.nextString();
+    }
+  }
+
+  // 省略 null 字段，字段顺序与 Gson 默认输出一致
+  public static String encode(Message message) {
+    StringWriter out = new StringWriter(64);
+    try (JsonWriter writer = new JsonWriter(out)) {
+      writer.beginObject();
+      writeField(writer, "type", message.getType());
+      writeField(writer, "nickname", message.getNickname());
+      writeField(writer, "text", message.getText());
+      writeField(writer, "status", message.getStatus());
+      writeField(writer, "message", message.getMessage());
+      writeField(writer, "room", message.getRoom());
+      writeField(writer, "cursor", message.getCursor());
+      writer.endObject();
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // StringWriter 不会抛出 IOException
+    }
+    return out.toString();
+  }
+
+  private static void writeField(JsonWriter writer, String name, String value)
+      throws IOException {
+    if (value != null) {
+      writer.name(name).value(value);
+    }
+  }
+}
@@ -5,6 +5,8 @@ module com.example.chatterdemo {
   requires javafx.base;
   requires com.google.gson;
   requires java.logging;
+  requires java.management;
+  requires jdk.httpserver;
 
   opens com.example.chatterdemo to javafx.fxml;
   opens com.example.chatterdemo.client to javafx.fxml;
@@ -13,6 +15,7 @@ module com.example.chatterdemo {
 
   exports com.example.chatterdemo;
   exports com.example.chatterdemo.client;
+  exports com.example.chatterdemo.loadtest;
   exports com.example.chatterdemo.server;
   exports com.example.chatterdemo.model;
   exports com.example.chatterdemo.utils;
@@ -0,0 +1,126 @@
+package com.example.chatterdemo.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.chatterdemo.model.Message;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// 翻页去重和超出上限时的淘汰，不启动 JavaFX
+class ChatTimelineTest {
+  private final List<ChatLine> lines = new ArrayList<>();
+
+  @Test
+  void firstPageSkipsConfirmedOwnMessages() {
+    ChatTimeline timeline = new ChatTimeline(lines, 100);
+    timeline.appendOwn(own("a"));
+    timeline.appendOwn(own("b"));
+    timeline.confirm("a", "5");
+    timeline.confirm("b", "6");
+    assertEquals("5", timeline.olderCursor());
+
+    // 服务端在确认之前就返回了从最新开始的一页
+    timeline.prependPage(page(3, 6), "3");
+    assertEquals(List.of("m3", "m4", "a", "b"), texts());
+  }
+
+  // 被拒绝的消息没有确认，后面的确认仍然对得上
+  @Test
+  void confirmationSkipsRejectedMessages() {
+    ChatTimeline timeline = new ChatTimeline(lines, 100);
+    timeline.appendOwn(own("rejected"));
+    timeline.appendOwn(own("kept"));
+    timeline.confirm("kept", "9");
+    assertEquals(null, lines.get(0).cursor());
+    assertEquals(9L, lines.get(1).cursor());
+  }
+
+  // 清空后窗口里只有还没确认的自己的消息：比收到过的都新的只能是它
+  @Test
+  void unconfirmedOwnMessageIsNotRepeated() {
+    ChatTimeline timeline = new ChatTimeline(lines, 100);
+    timeline.appendLive(live(10), true);
+    timeline.reset();
+    timeline.appendOwn(own("m11"));
+    assertEquals(null, timeline.olderCursor());
+
+    timeline.prependPage(page(8, 11), "8");
+    assertEquals(List.of("m8", "m9", "m10", "m11"), texts());
+    assertEquals(8L, lines.get(0).cursor());
+    assertEquals(null, lines.get(3).cursor());
+  }
+
+  // 跟随最新消息时淘汰最早的，之后仍从窗口里最早的序号向前翻，不重复
+  @Test
+  void trimmingOldestKeepsPagingContiguous() {
+    ChatTimeline timeline = new ChatTimeline(lines, 3);
+    for (long cursor = 1; cursor <= 5; cursor++) {
+      timeline.appendLive(live(cursor), true);
+    }
+    assertEquals(List.of("m3", "m4", "m5"), texts());
+    assertEquals("3", timeline.olderCursor());
+    assertFalse(timeline.isDetached());
+  }
+
+  // 向前翻页超出上限时淘汰最新的一端，之后的实时消息不再追加，清空后重新加载
+  @Test
+  void evictingNewestDetachesUntilReload() {
+    ChatTimeline timeline = new ChatTimeline(lines, 4);
+    for (long cursor = 5; cursor <= 7; cursor++) {
+      timeline.appendLive(live(cursor), true);
+    }
+    assertEquals(2, timeline.prependPage(page(3, 4), "3"));
+    assertEquals(List.of("m3", "m4", "m5", "m6"), texts());
+    assertTrue(timeline.isDetached());
+
+    assertFalse(timeline.appendLive(live(8), true));
+    assertEquals(List.of("m3", "m4", "m5", "m6"), texts());
+
+    timeline.reset();
+    assertFalse(timeline.isDetached());
+    assertEquals(null, timeline.olderCursor());
+    timeline.prependPage(page(6, 8), "6");
+    assertEquals(List.of("m6", "m7", "m8"), texts());
+  }
+
+  // 往上翻看时窗口已满：不淘汰正在看的最早的行，放弃最新的一端
+  @Test
+  void liveMessageWhileReadingOlderDetaches() {
+    ChatTimeline timeline = new ChatTimeline(lines, 2);
+    timeline.appendLive(live(1), true);
+    timeline.appendLive(live(2), true);
+    assertFalse(timeline.appendLive(live(3), false));
+    assertEquals(List.of("m1", "m2"), texts());
+    assertTrue(timeline.isDetached());
+  }
+
+  private List<String> texts() {
+    List<String> texts = new ArrayList<>();
+    for (ChatLine line : lines) {
+      texts.add(line.message().getText());
+    }
+    return texts;
+  }
+
+  private static ChatLine own(String text) {
+    return new ChatLine(new Message("message", "me", text), "00:00:00");
+  }
+
+  private static ChatLine live(long cursor) {
+    Message message = new Message("message", "other", "m" + cursor);
+    message.setCursor(Long.toString(cursor));
+    return new ChatLine(message, "00:00:00");
+  }
+
+  // 服务端返回的一页，按时间顺序
+  private static List<ChatLine> page(long from, long to) {
+    List<ChatLine> page = new ArrayList<>();
+    for (long cursor = from; cursor <= to; cursor++) {
+      page.add(live(cursor));
+    }
+    return page;
+  }
+}
@@ -0,0 +1,49 @@
+package com.example.chatterdemo.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.example.chatterdemo.model.Message;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// 登录窗口只处理 login 响应；服务端紧随登录成功回放的最近消息要等聊天窗口接管后交给它
+class MessageHandoffTest {
+  @Test
+  void replayAfterLoginReachesChatWindow() {
+    MessageHandoff handoff = new MessageHandoff();
+    List<String> loginWindow = new ArrayList<>();
+    List<String> chatWindow = new ArrayList<>();
+    handoff.setListener(message -> {
+      if ("login".equals(message.getType())) {
+        loginWindow.add(message.getStatus());
+      }
+    });
+
+    handoff.deliver(
+        Message.createResponse("login", "error", "Invalid password"));
+    handoff.deliver(
+        Message.createResponse("login", "success", "Login successful"));
+    handoff.deliver(new Message("message", "alice", "replayed 1"));
+    handoff.deliver(new Message("message", "bob", "replayed 2"));
+    handoff.deliver(new Message("system", null, "carol joined the chat"));
+    handoff.setListener(message -> chatWindow.add(message.getText()));
+    handoff.deliver(new Message("message", "alice", "live"));
+
+    assertEquals(List.of("error", "success"), loginWindow);
+    assertEquals(List.of("replayed 1", "replayed 2", "carol joined the chat",
+                         "live"),
+                 chatWindow);
+  }
+
+  // 登录失败时不缓存，后续消息照常交给当前监听器
+  @Test
+  void failedLoginDoesNotHoldMessages() {
+    MessageHandoff handoff = new MessageHandoff();
+    List<String> received = new ArrayList<>();
+    handoff.setListener(message -> received.add(message.getType()));
+    handoff.deliver(Message.createResponse("login", "error", "User not found"));
+    handoff.deliver(Message.createResponse("register", "success", "ok"));
+    assertEquals(List.of("login", "register"), received);
+  }
+}
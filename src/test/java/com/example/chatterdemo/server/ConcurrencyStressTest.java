@@ -0,0 +1,313 @@
+package com.example.chatterdemo.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.chatterdemo.model.Message;
+import com.example.chatterdemo.utils.MessageJsonCodec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// 并发注册和并发登录的压力测试：注册不丢失，同一用户同时只有一个会话
+class ConcurrencyStressTest {
+  private static final int THREADS = 8;
+  private static final int USERS_PER_THREAD = 250;
+  private static final int SHARED_USERS = 50;
+  private static final int LOGIN_ROUNDS = 10;
+  private static final int CONTENDERS = 16;
+
+  @TempDir Path dir;
+
+  // 各线程注册各自的用户，同时争抢同一批用户名；关闭后重新加载，全部成功的注册都在
+  @Test
+  void concurrentRegistrationsAreAllPersisted() throws Exception {
+    Path snapshot = dir.resolve("users.json");
+    UserDirectory users = new UserDirectory();
+    // 阈值很小，压测期间会多次切换日志并合并快照
+    UserStore store = new UserStore(snapshot, users, 100);
+    store.start();
+    AtomicInteger sharedWins = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      int thread = t;
+      tasks.add(pool.submit(() -> {
+        start.await();
+        for (int i = 0; i < USERS_PER_THREAD; i++) {
+          register(users, store, "user-" + thread + "-" + i, null);
+          if (i < SHARED_USERS) {
+            register(users, store, "shared-" + i, sharedWins);
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> task : tasks) {
+      task.get(60, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+    store.close();
+
+    assertEquals(SHARED_USERS, sharedWins.get());
+    UserDirectory reloaded = new UserDirectory();
+    new UserStore(snapshot, reloaded, 100).load();
+    assertEquals(THREADS * USERS_PER_THREAD + SHARED_USERS, reloaded.size());
+    for (int t = 0; t < THREADS; t++) {
+      for (int i = 0; i < USERS_PER_THREAD; i++) {
+        String username = "user-" + t + "-" + i;
+        UserAccount account = reloaded.lookup(username);
+        assertNotNull(account, username);
+        assertEquals("nick-" + username, account.nickname());
+      }
+    }
+  }
+
+  // 与 ChatServer.handleRegister 相同：先占用用户名，再等待日志落盘
+  private static void register(UserDirectory users, UserStore store,
+                               String username, AtomicInteger wins) {
+    UserAccount account = new UserAccount("pw", "nick-" + username);
+    if (users.insert(username, account)) {
+      store.append(username, account).join();
+      if (wins != null) {
+        wins.incrementAndGet();
+      }
+    }
+  }
+
+  // 多个连接同时登录同一用户只有一个成功；一半的连接发出登录后立即断开，
+  // 与登录交错执行的 onClose 不能在在线表里留下记录，之后总能重新登录
+  @Test
+  void concurrentLoginsAdmitOneSessionPerUser() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setPort(0);
+    config.setDataDir(dir.toString());
+    config.setRateLimitMessagesPerSecond(0);
+    config.setRateLimitBytesPerSecond(0);
+    config.setPingIntervalSeconds(0);
+    config.setRecentHistorySize(0);
+    ChatServer server = new ChatServer(config);
+    Thread serving = new Thread(server::startServer, "stress-server");
+    serving.setDaemon(true);
+    serving.start();
+    int port = server.localPort();
+    ExecutorService pool = Executors.newFixedThreadPool(CONTENDERS);
+    try {
+      for (int round = 0; round < LOGIN_ROUNDS; round++) {
+        String username = "round" + round;
+        try (Client client = new Client(port)) {
+          client.send(registerRequest(username));
+          assertEquals("success", client.read().getStatus());
+        }
+        if (round % 2 == 0) {
+          // 所有连接都读取了回复，恰好一个成功
+          assertEquals(1, contend(pool, port, username, false));
+        } else {
+          // 成功的可能正是已断开的连接
+          assertTrue(contend(pool, port, username, true) <= 1);
+        }
+      }
+      for (int round = 0; round < LOGIN_ROUNDS; round++) {
+        assertTrue(eventuallyLogsIn(port, "round" + round),
+                   "round" + round + " stayed logged in");
+      }
+    } finally {
+      pool.shutdownNow();
+      server.shutdown();
+    }
+  }
+
+  // 几个人持续发言时登录：回放的尾部和之后的实时消息按序号严格递增，既不乱序也不重复
+  @Test
+  void replayAndLiveMessagesDoNotOverlap() throws Exception {
+    int senders = 4;
+    ServerConfig config = new ServerConfig();
+    config.setPort(0);
+    config.setDataDir(dir.toString());
+    config.setRateLimitMessagesPerSecond(0);
+    config.setRateLimitBytesPerSecond(0);
+    config.setPingIntervalSeconds(0);
+    config.setRecentHistorySize(20);
+    // 每个连接一个线程，登录与其他连接的消息才会真正并发
+    config.setTransport(ServerConfig.TransportMode.BLOCKING);
+    // 发送者不读，队列要装得下全部广播，否则后面的 pong 会被挤掉
+    config.setOutboundQueueCapacity(8192);
+    ChatServer server = new ChatServer(config);
+    Thread serving = new Thread(server::startServer, "replay-server");
+    serving.setDaemon(true);
+    serving.start();
+    int port = server.localPort();
+    ExecutorService pool = Executors.newFixedThreadPool(CONTENDERS + senders);
+    List<Client> sending = new ArrayList<>();
+    try {
+      for (int i = 0; i < CONTENDERS + senders; i++) {
+        try (Client client = new Client(port)) {
+          client.send(registerRequest("reader" + i));
+          assertEquals("success", client.read().getStatus());
+        }
+      }
+      for (int i = 0; i < senders; i++) {
+        Client sender = new Client(port);
+        sending.add(sender);
+        sender.send(Message.createLoginRequest("reader" + (CONTENDERS + i),
+                                               "pw"));
+        assertEquals("success", sender.read().getStatus());
+      }
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<List<Long>>> readers = new ArrayList<>();
+      for (int i = 0; i < CONTENDERS; i++) {
+        String username = "reader" + i;
+        readers.add(pool.submit(() -> {
+          start.await();
+          try (Client client = new Client(port)) {
+            client.send(Message.createLoginRequest(username, "pw"));
+            List<Long> cursors = new ArrayList<>();
+            Message message;
+            while (!"done".equals((message = client.read()).getText())) {
+              if ("message".equals(message.getType()) &&
+                  message.getCursor() != null) {
+                cursors.add(Long.parseLong(message.getCursor()));
+              }
+            }
+            return cursors;
+          }
+        }));
+      }
+      start.countDown();
+      List<Future<?>> posts = new ArrayList<>();
+      for (Client sender : sending) {
+        posts.add(pool.submit(() -> {
+          for (int i = 0; i < 1000; i++) {
+            sender.send(new Message("message", "sender", "m" + i));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> post : posts) {
+        post.get(30, TimeUnit.SECONDS);
+      }
+      // 服务端按连接顺序处理：收到 pong 说明这个发送者的消息都已广播，
+      // done 是最后一条，晚登录的读者也能在回放里看到它
+      for (Client sender : sending) {
+        sender.send(new Message("ping", null, "sync"));
+        while (!"pong".equals(sender.read().getType())) {
+          // 跳过之前积压的广播
+        }
+      }
+      sending.get(0).send(new Message("message", "sender", "done"));
+      for (Future<List<Long>> reader : readers) {
+        List<Long> cursors = reader.get(30, TimeUnit.SECONDS);
+        for (int i = 1; i < cursors.size(); i++) {
+          assertTrue(cursors.get(i) > cursors.get(i - 1),
+                     "out of order or repeated: " + cursors);
+        }
+      }
+    } finally {
+      for (Client sender : sending) {
+        sender.close();
+      }
+      pool.shutdownNow();
+      server.shutdown();
+    }
+  }
+
+  private static int contend(ExecutorService pool, int port, String username,
+                             boolean abandonHalf) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Client> clients = new ArrayList<>();
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < CONTENDERS; i++) {
+      Client client = new Client(port);
+      clients.add(client);
+      boolean abandon = abandonHalf && i % 2 == 0;
+      results.add(pool.submit(() -> {
+        start.await();
+        client.send(Message.createLoginRequest(username, "pw"));
+        if (abandon) {
+          client.close();
+          return false;
+        }
+        return "success".equals(client.read().getStatus());
+      }));
+    }
+    start.countDown();
+    int winners = 0;
+    for (Future<Boolean> result : results) {
+      if (result.get(30, TimeUnit.SECONDS)) {
+        winners++;
+      }
+    }
+    for (Client client : clients) {
+      client.close();
+    }
+    return winners;
+  }
+
+  // 断开由服务端异步处理，给它一点时间
+  private static boolean eventuallyLogsIn(int port, String username)
+      throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < deadline) {
+      try (Client client = new Client(port)) {
+        client.send(Message.createLoginRequest(username, "pw"));
+        if ("success".equals(client.read().getStatus())) {
+          return true;
+        }
+      }
+      Thread.sleep(50);
+    }
+    return false;
+  }
+
+  private static Message registerRequest(String username) {
+    return Message.createRegisterRequest(username, "pw", "nick-" + username);
+  }
+
+  // 只用 JSON 行协议，足以覆盖登录和注册路径
+  private static final class Client implements AutoCloseable {
+    private final Socket socket = new Socket();
+    private final BufferedReader reader;
+    private final OutputStream out;
+
+    Client(int port) throws IOException {
+      socket.connect(new InetSocketAddress("localhost", port), 5000);
+      socket.setSoTimeout(10_000);
+      reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      out = socket.getOutputStream();
+    }
+
+    void send(Message message) throws IOException {
+      out.write((MessageJsonCodec.encode(message) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+
+    Message read() throws IOException {
+      return MessageJsonCodec.decode(reader.readLine());
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+}